@@ -0,0 +1,108 @@
+package benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// =========================================================
+// BENCHMARK CORPUS
+// The base report is src/engine/extracted.txt (6 pages, written
+// with the Windows default charset). Larger variants repeat its
+// pages, like a long cumulative report.
+// =========================================================
+public final class BenchData {
+
+    public static final String SAMPLE_PATH =
+            System.getProperty("bench.sample", "src/engine/extracted.txt");
+
+    private BenchData() {
+    }
+
+    public static String sampleReport() {
+        try {
+            return new String(Files.readAllBytes(Paths.get(SAMPLE_PATH)),
+                    StandardCharsets.ISO_8859_1);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cannot read sample report " + SAMPLE_PATH, e);
+        }
+    }
+
+    // Sample report repeated `copies` times (6 pages per copy)
+    public static String report(int copies) {
+
+        String base = sampleReport();
+
+        StringBuilder sb = new StringBuilder(base.length() * Math.max(1, copies));
+
+        for (int i = 0; i < Math.max(1, copies); i++) {
+            sb.append(base);
+        }
+
+        return sb.toString();
+    }
+
+    // Parameter → method catalogue of the lab that issued the sample
+    public static Map<String, String> labCatalogue() {
+
+        Map<String, String> m = new LinkedHashMap<>();
+
+        m.put("Hemoglobin", "Photometric");
+        m.put("Packed Cell Volume (HCT)", "Calculated");
+        m.put("R.B.C.Count", "Electrical Impedance");
+        m.put("Mean Cell Volume(MCV)", "Calculated");
+        m.put("Mean Cell Hemoglobin( MCH)", "Calculated");
+        m.put("Mean Cell Hb Conc(MCHC)", "Calculated");
+        m.put("Total WBC Count", "Electrical Impedance");
+        m.put("Polymorphs", "Coulter VCSn Tech");
+        m.put("Lymphocytes", "Coulter VCSn Tech");
+        m.put("Eosinophils", "Coulter VCSn Tech");
+        m.put("Monocytes", "Coulter VCSn Tech");
+        m.put("Basophils", "Coulter VCSn Tech");
+        m.put("Absolute Neutrophils Count", "Calculated");
+        m.put("Absolute Lymphocytes Count", "Calculated");
+        m.put("Absolute Monocytes Count", "Calculated");
+        m.put("Absolute Eosinophils Count, AEC", "Calculated");
+        m.put("Platelet Count", "Electrical Impedance");
+        m.put("Blood Sugar Fasting", "GOD-POD");
+        m.put("Post Prandial plasma glucose", "GOD - POD");
+        m.put("Serum Creatinine", "mod.Jaffes");
+        m.put("Total Cholesterol", "CHOD/POD");
+        m.put("Triglycerides", "GPO-Trinders");
+        m.put("HDL Cholesterol", "Direct/turbidometry");
+        m.put("NON HDL Cholesterol", "Calculated");
+        m.put("LDL Cholesterol", "Direct/turbidometry");
+        m.put("VLDL Cholesterol", "Calculated");
+        m.put("Cholesterol/HDL Chol. Ratio", "Calculated");
+        m.put("LDL Chol / HDL Chol Ratio", "Calculated");
+        m.put("Bilirubin ( Total )", "Diazo");
+        m.put("Bilirubin ( Direct )", "Diazo");
+        m.put("Bilirubin ( Indirect )", "Calculated");
+        m.put("SGOT (AST)", "IFCC");
+        m.put("SGPT (ALT)", "IFCC");
+        m.put("Alkaline Phosphatase", "p-NPP,kinetic");
+        m.put("Total Protein", "Biuret");
+        m.put("Albumin", "BCG dye");
+        m.put("Globulin", "Calculated");
+        m.put("Alb/Glo Ratio", "Calculated");
+        m.put("TSH (Thyroid Stimulating Hormone)", "CLIA");
+        m.put("HbA1c", "HPLC");
+        m.put("Estimated Mean Blood Glucose", null);
+
+        return m;
+    }
+
+    // Catalogue padded with synthetic parameters/methods to model a
+    // lab with a large test menu
+    public static Map<String, String> labCatalogue(int size) {
+
+        Map<String, String> m = labCatalogue();
+
+        for (int i = m.size(); i < size; i++) {
+            m.put("Synthetic Analyte " + i, "Synthetic Method " + (i % 97));
+        }
+
+        return m;
+    }
+}
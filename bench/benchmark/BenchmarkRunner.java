@@ -0,0 +1,25 @@
+package benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// =========================================================
+// Runs all benchmarks (or those matching args[0]) with the GC
+// profiler, so every result also shows bytes allocated per op.
+// =========================================================
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+
+        String include = args.length > 0 ? args[0] : "benchmark\\..*";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .build();
+
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,119 @@
+package benchmark;
+
+import engine.PDFExtractorEngine;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// =========================================================
+// PDFExtractorEngine: sequential vs parallel vs streaming.
+// Uses -Dbench.pdf=<file> when given, otherwise renders the
+// sample report into a temporary PDF of the requested size.
+// The extraction cache is disabled so every call parses.
+// =========================================================
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExtractionBenchmark {
+
+    @Param({ "1", "5" })
+    public int copies;
+
+    private String pdfPath;
+    private Path generated;
+
+    private PDFExtractorEngine sequential;
+    private PDFExtractorEngine parallel;
+
+    @Setup
+    public void setup() throws Exception {
+
+        String given = System.getProperty("bench.pdf");
+
+        if (given != null) {
+            pdfPath = given;
+        } else {
+            generated = Files.createTempFile("bench-report", ".pdf");
+            renderPdf(BenchData.report(copies), generated.toFile());
+            pdfPath = generated.toString();
+        }
+
+        sequential = new PDFExtractorEngine();
+        sequential.setCache(null);
+
+        parallel = new PDFExtractorEngine();
+        parallel.setCache(null);
+        parallel.setParallel(true);
+        parallel.setParallelMinPages(2);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (generated != null) {
+            Files.deleteIfExists(generated);
+        }
+    }
+
+    @Benchmark
+    public String extractSequential() {
+        return sequential.extractAndSave(pdfPath);
+    }
+
+    @Benchmark
+    public String extractParallel() {
+        return parallel.extractAndSave(pdfPath);
+    }
+
+    @Benchmark
+    public int extractStreaming() {
+        int[] chars = { 0 };
+        sequential.extractPages(pdfPath, (page, count, text) -> {
+            chars[0] += text.length();
+            return true;
+        });
+        return chars[0];
+    }
+
+    // One PDF page per "Page X of Y" block of the text report
+    private static void renderPdf(String text, File target) throws Exception {
+
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+
+        try (PDDocument doc = new PDDocument()) {
+
+            for (String pageText : text.split("(?<=Page \\d of \\d)")) {
+
+                PDPage page = new PDPage();
+                doc.addPage(page);
+
+                try (PDPageContentStream cs = new PDPageContentStream(doc, page)) {
+
+                    cs.beginText();
+                    cs.setFont(font, 7);
+                    cs.setLeading(9);
+                    cs.newLineAtOffset(30, 760);
+
+                    for (String line : pageText.split("\r?\n")) {
+                        cs.showText(line.replaceAll("[^\\x20-\\x7E]", " "));
+                        cs.newLine();
+                    }
+
+                    cs.endText();
+                }
+            }
+
+            doc.save(target);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package benchmark;
+
+import engine.LabValidator;
+import engine.RowScanner;
+import org.ahocorasick.trie.Trie;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// =========================================================
+// Per-row value extraction and method comparison.
+// The legacy* benchmarks keep the original regex versions of
+// extractValue / normalize as a baseline for RowScanner.
+// =========================================================
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowParsingBenchmark {
+
+    private static final String ROW =
+            "Total WBC Count 8300 cells/cumm 4000-11000 Electrical Impedance";
+    private static final int NAME_END = "Total WBC Count".length();
+
+    private static final String PDF_METHOD = "Electrical Impedance";
+    private static final String DB_METHOD = "electrical-impedance";
+
+    private final RowScanner scanner = new RowScanner();
+    private Trie methodTrie;
+
+    @Setup
+    public void setup() {
+        methodTrie = LabValidator.compile(1, BenchData.labCatalogue()).getMethodTrie();
+    }
+
+    @Benchmark
+    public double rowScanner() {
+        scanner.scan(ROW, 0, NAME_END, methodTrie);
+        return scanner.value;
+    }
+
+    @Benchmark
+    public void legacyExtractValue(Blackhole bh) {
+        Matcher m = Pattern.compile("([-+]?[0-9]*\\.?[0-9]+)").matcher(ROW);
+        if (m.find()) {
+            bh.consume(Double.parseDouble(m.group(1)));
+        }
+    }
+
+    @Benchmark
+    public boolean sameLetters() {
+        return RowScanner.sameLetters(PDF_METHOD, DB_METHOD);
+    }
+
+    @Benchmark
+    public boolean legacyNormalize() {
+        return normalize(PDF_METHOD).equals(normalize(DB_METHOD));
+    }
+
+    private static String normalize(String s) {
+        if (s == null)
+            return "";
+        return s.replaceAll("[^a-zA-Z]", "").toLowerCase();
+    }
+}
@@ -0,0 +1,34 @@
+package benchmark;
+
+import engine.LabValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// =========================================================
+// Cost of compiling a lab (parameter + method automata)
+// =========================================================
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBuildBenchmark {
+
+    @Param({ "41", "1000", "10000" })
+    public int catalogueSize;
+
+    private Map<String, String> catalogue;
+
+    @Setup
+    public void setup() {
+        catalogue = BenchData.labCatalogue(catalogueSize);
+    }
+
+    @Benchmark
+    public LabValidator compileLab() {
+        return LabValidator.compile(1, catalogue);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import engine.LabValidator;
+import engine.MethodValidationEngine;
+import engine.ResultBatch;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// =========================================================
+// MethodValidationEngine.validate over the sample report
+// (1 copy = 6 pages, 30 copies ~ a long cumulative report)
+// =========================================================
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({ "1", "5", "30" })
+    public int copies;
+
+    @Param({ "41", "1000" })
+    public int catalogueSize;
+
+    private String text;
+    private Map<String, String> catalogue;
+    private LabValidator lab;
+    private MethodValidationEngine engine;
+
+    @Setup
+    public void setup() {
+        text = BenchData.report(copies);
+        catalogue = BenchData.labCatalogue(catalogueSize);
+        lab = LabValidator.compile(1, catalogue);
+        engine = new MethodValidationEngine();
+    }
+
+    // Cached per-lab validator, compact ResultBatch (the queue engine path)
+    @Benchmark
+    public ResultBatch validateBatch() {
+        return engine.validateBatch(text, lab);
+    }
+
+    // Cached per-lab validator, one ValidationResult per row
+    @Benchmark
+    public List<MethodValidationEngine.ValidationResult> validateCompiled() {
+        return engine.validate(text, lab);
+    }
+
+    // Trie built on every call (legacy validate(text, paramMap))
+    @Benchmark
+    public List<MethodValidationEngine.ValidationResult> validateUncached() {
+        return engine.validate(text, catalogue);
+    }
+}
@@ -0,0 +1,46 @@
+-- =========================================================
+-- EXTRACTED ROWS
+-- One row per parameter found in a report, stored once when
+-- the report is validated. dbmethod is the poc.testparameter
+-- method the row was last validated against; methodtext is the
+-- text the PDF method was looked for in (method cell or the row
+-- after the value). Re-validation (queueengine_v1
+-- .RevalidationRunner) re-checks, without the PDF, only rows
+-- whose snapshot differs from the current method or whose
+-- methodtext now matches a different catalogue method.
+-- =========================================================
+
+CREATE TABLE IF NOT EXISTS poc.extractedrow (
+    reportid       integer      NOT NULL,
+    labid          integer      NOT NULL,
+    parametername  text         NOT NULL,
+    value          text,
+    unit           text,
+    refrange       text,
+    pdfmethod      text,
+    methodtext     text,
+    page           smallint     NOT NULL DEFAULT 0,
+    dbmethod       text,
+    status         text         NOT NULL,
+    validatedat    timestamp    NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (reportid, parametername)
+);
+
+-- Tables created before methodtext existed
+ALTER TABLE poc.extractedrow ADD COLUMN IF NOT EXISTS methodtext text;
+
+-- Re-validation reads all rows of one lab, per parameter
+CREATE INDEX IF NOT EXISTS extractedrow_lab_param
+    ON poc.extractedrow (labid, parametername);
+
+-- Reports validated outside poc.reportqueue (engine.BulkRunner,
+-- engine.EngineRunner) have no queue id: each PDF path gets a
+-- negative reportid here, never clashing with queue ids, and the
+-- same one on every re-run.
+CREATE SEQUENCE IF NOT EXISTS poc.extractedsource_seq
+    AS integer INCREMENT BY -1 MAXVALUE -1 START WITH -1;
+
+CREATE TABLE IF NOT EXISTS poc.extractedsource (
+    filepath  text     PRIMARY KEY,
+    reportid  integer  NOT NULL UNIQUE DEFAULT nextval('poc.extractedsource_seq')
+);
@@ -0,0 +1,21 @@
+-- =========================================================
+-- PATIENT IDENTITY
+-- MR number on poc.patient, so a report can be matched to its
+-- patient from the number printed in its header, and an
+-- optional patientid on poc.reportqueue for uploads that
+-- already know the patient. Claimed batches resolve their
+-- patients with one "patientid = ANY(?)" query (PatientCache).
+--
+-- Rows with neither a queue patientid nor a matching MR number
+-- fail with "Patient not found".
+-- =========================================================
+
+ALTER TABLE poc.patient
+    ADD COLUMN IF NOT EXISTS mrnumber varchar(32);
+
+CREATE UNIQUE INDEX IF NOT EXISTS patient_mrnumber
+    ON poc.patient (mrnumber)
+    WHERE mrnumber IS NOT NULL;
+
+ALTER TABLE poc.reportqueue
+    ADD COLUMN IF NOT EXISTS patientid integer;
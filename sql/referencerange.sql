@@ -0,0 +1,26 @@
+-- =========================================================
+-- REFERENCE RANGES
+-- Normal range per lab parameter, optionally per gender and
+-- age band. Loaded once per lab by LabValidatorCache; the engine
+-- flags abnormal values itself and writes the flag with the
+-- batched results. Parameters without a row here fall back to
+-- the minrange / maxrange CASE on poc.patientresult.
+--
+--   gender  NULL = any, 'M' or 'F'
+--   agemin / agemax in whole years, NULL = open
+--   minrange / maxrange NULL = open bound
+-- =========================================================
+
+CREATE TABLE IF NOT EXISTS poc.referencerange (
+    referencerangeid  serial   PRIMARY KEY,
+    labid             integer  NOT NULL,
+    parametername     text     NOT NULL,
+    gender            char(1),
+    agemin            integer,
+    agemax            integer,
+    minrange          numeric,
+    maxrange          numeric
+);
+
+CREATE INDEX IF NOT EXISTS referencerange_lab
+    ON poc.referencerange (labid);
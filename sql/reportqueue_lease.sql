@@ -0,0 +1,21 @@
+-- =========================================================
+-- CLAIM LEASE
+-- claimedat is set when a report is claimed (PENDING ->
+-- PROCESSING). A report still PROCESSING after the lease
+-- (QueueRunner --lease-seconds, default 900) belonged to an
+-- engine that died without releasing it; the next engine to
+-- claim puts it back to PENDING (QueueDatabaseManager
+-- .requeueExpired). The lease must be longer than the slowest
+-- report, or a report still running is claimed a second time.
+--
+-- Rows PROCESSING from before this column existed have no
+-- claimedat and are left alone.
+-- =========================================================
+
+ALTER TABLE poc.reportqueue
+    ADD COLUMN IF NOT EXISTS claimedat timestamp;
+
+-- The sweep looks at PROCESSING rows only
+CREATE INDEX IF NOT EXISTS reportqueue_processing_claimedat
+    ON poc.reportqueue (claimedat)
+    WHERE status = 'PROCESSING';
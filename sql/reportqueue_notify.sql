@@ -0,0 +1,24 @@
+-- =========================================================
+-- REPORT QUEUE NOTIFY TRIGGER
+-- Sends NOTIFY reportqueue_pending (payload = reportid) whenever
+-- a report becomes PENDING, so queue workers started with
+-- --listen wake up at once instead of polling.
+-- =========================================================
+
+CREATE OR REPLACE FUNCTION poc.notify_reportqueue_pending()
+RETURNS trigger AS $$
+BEGIN
+    IF NEW.status = 'PENDING' THEN
+        PERFORM pg_notify('reportqueue_pending', NEW.reportid::text);
+    END IF;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS reportqueue_pending_notify ON poc.reportqueue;
+
+-- New uploads, and FAILED reports reset to PENDING for a retry
+CREATE TRIGGER reportqueue_pending_notify
+AFTER INSERT OR UPDATE OF status ON poc.reportqueue
+FOR EACH ROW
+EXECUTE FUNCTION poc.notify_reportqueue_pending();
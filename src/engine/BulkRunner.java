@@ -0,0 +1,444 @@
+package engine;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// =========================================================
+// BULK REPROCESSING
+// Re-runs a directory or manifest of archived PDFs without
+// going through poc.reportqueue, e.g. after a lab changed its
+// methods or to load a new lab's history.
+//
+// Usage:
+//   BulkRunner <manifest.csv>                   rows: file,labId,patientId
+//   BulkRunner <dir> --lab L [--patient P]      every *.pdf in dir
+//   patientId 0 / no --patient: found by the MR Number in each header
+//   (optional) --parallelism N   fork-join threads (default: cores)
+//   (optional) --checkpoint F    progress file (default: <input>.checkpoint)
+//
+// Reports are processed on a ForkJoinPool. Each finished report
+// is appended to the checkpoint file; a killed run started again
+// with the same input skips every report already marked DONE.
+// Results go through DatabaseManager.insertPatientResults (one
+// batch, one transaction per report) and the parsed rows into
+// poc.extractedrow under the file's id (ExtractedRowStore
+// .reportIdFor), for re-validation. All patients named by id
+// are loaded in one query before the run starts.
+// =========================================================
+public class BulkRunner {
+
+    public static void main(String[] args) throws Exception {
+
+        System.out.println("=================================");
+        System.out.println(" BULK REPROCESSING ");
+        System.out.println("=================================");
+
+        if (args.length == 0) {
+            System.out.println("Usage: BulkRunner <dir|manifest.csv> [--lab L] [--patient P]"
+                    + " [--parallelism N] [--checkpoint F]");
+            return;
+        }
+
+        String input = args[0];
+        int labId = 0;
+        int patientId = 0;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String checkpoint = input.replaceAll("[/\\\\]+$", "") + ".checkpoint";
+
+        for (int i = 1; i < args.length - 1; i++) {
+            if (args[i].equals("--lab")) {
+                labId = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--patient")) {
+                patientId = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--parallelism")) {
+                parallelism = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--checkpoint")) {
+                checkpoint = args[i + 1];
+            }
+        }
+
+        List<BulkJob> jobs = Files.isDirectory(Paths.get(input))
+                ? listDirectory(Paths.get(input), labId, patientId)
+                : readManifest(Paths.get(input));
+
+        Checkpoint progress = new Checkpoint(Paths.get(checkpoint));
+
+        List<BulkJob> todo = new ArrayList<>();
+        for (BulkJob job : jobs) {
+            if (!progress.isDone(job.file)) {
+                todo.add(job);
+            }
+        }
+
+        System.out.println("Reports in input : " + jobs.size());
+        System.out.println("Already done     : " + (jobs.size() - todo.size()));
+        System.out.println("To process       : " + todo.size());
+        System.out.println("Parallelism      : " + parallelism);
+        System.out.println("Checkpoint       : " + Paths.get(checkpoint).toAbsolutePath());
+
+        BulkRunner runner = new BulkRunner(progress);
+
+        // fail now rather than have every report fail
+        if (!runner.db.checkPatientSchema()) {
+            progress.close();
+            DataSourceProvider.close();
+            return;
+        }
+
+        List<Integer> patientIds = new ArrayList<>();
+        for (BulkJob job : todo) {
+            patientIds.add(job.patientId);
+        }
+        runner.patients.prefetch(patientIds);
+
+        long start = System.nanoTime();
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new BulkTask(runner, todo, 0, todo.size()));
+        } finally {
+            pool.shutdown();
+            progress.close();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        int processed = runner.done.get() + runner.failed.get();
+
+        System.out.println("\n=================================");
+        System.out.println(" BULK SUMMARY ");
+        System.out.println("=================================");
+        System.out.println("Processed        : " + processed);
+        System.out.println("DONE             : " + runner.done.get());
+        System.out.println("FAILED           : " + runner.failed.get());
+        System.out.println("Results inserted : " + runner.inserted.get());
+        System.out.println("Time in sec      : " + String.format("%.2f", seconds));
+        System.out.println("Reports / sec    : "
+                + String.format("%.2f", seconds > 0 ? processed / seconds : 0));
+        System.out.println("=================================");
+
+        System.out.println("\n=================================");
+        System.out.println(" STAGE METRICS ");
+        System.out.println("=================================");
+        System.out.print(EngineMetrics.summary());
+        System.out.println("=================================");
+
+        DataSourceProvider.close();
+    }
+
+    // ======================================================
+    // INPUT
+    // ======================================================
+    static class BulkJob {
+
+        final String file;
+        final int labId;
+        final int patientId;
+
+        BulkJob(String file, int labId, int patientId) {
+            this.file = file;
+            this.labId = labId;
+            this.patientId = patientId;
+        }
+    }
+
+    private static List<BulkJob> listDirectory(Path dir, int labId, int patientId)
+            throws IOException {
+
+        if (labId <= 0) {
+            throw new IllegalArgumentException(
+                    "--lab is required for a directory");
+        }
+
+        List<BulkJob> jobs = new ArrayList<>();
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().toLowerCase().endsWith(".pdf"))
+                    .sorted()
+                    .forEach(p -> jobs.add(new BulkJob(p.toString(), labId, patientId)));
+        }
+
+        return jobs;
+    }
+
+    // file,labId,patientId per line; a header line and blank lines
+    // are skipped. Relative paths are resolved against the
+    // manifest's directory.
+    private static List<BulkJob> readManifest(Path manifest) throws IOException {
+
+        List<BulkJob> jobs = new ArrayList<>();
+        Path base = manifest.toAbsolutePath().getParent();
+
+        int lineNo = 0;
+
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+
+            lineNo++;
+
+            String[] cols = line.split(",");
+
+            if (line.isBlank() || cols.length < 3) {
+                continue;
+            }
+
+            try {
+                int labId = Integer.parseInt(cols[1].trim());
+                int patientId = Integer.parseInt(cols[2].trim());
+                String file = base.resolve(cols[0].trim()).toString();
+                jobs.add(new BulkJob(file, labId, patientId));
+            } catch (NumberFormatException e) {
+                if (lineNo > 1) {
+                    System.out.println("Skipping manifest line " + lineNo + ": " + line);
+                }
+            }
+        }
+
+        return jobs;
+    }
+
+    // ======================================================
+    // FORK-JOIN
+    // Splits the job list in halves down to single reports.
+    // ======================================================
+    // ForkJoinTask is Serializable; tasks never are serialized here
+    private static class BulkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient BulkRunner runner;
+        private final transient List<BulkJob> jobs;
+        private final int from;
+        private final int to;
+
+        BulkTask(BulkRunner runner, List<BulkJob> jobs, int from, int to) {
+            this.runner = runner;
+            this.jobs = jobs;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+
+            if (to - from <= 1) {
+                if (from < to) {
+                    runner.process(jobs.get(from));
+                }
+                return;
+            }
+
+            int mid = (from + to) >>> 1;
+
+            invokeAll(new BulkTask(runner, jobs, from, mid),
+                    new BulkTask(runner, jobs, mid, to));
+        }
+    }
+
+    // ======================================================
+    // ONE REPORT
+    // ======================================================
+    private final DatabaseManager db = new DatabaseManager();
+    private final LabValidatorCache labCache = new LabValidatorCache(db);
+    private final MethodValidationEngine engine = new MethodValidationEngine();
+    private final PatientCache patients = new PatientCache(db);
+    private final ExtractedRowStore rowStore = new ExtractedRowStore();
+    private final Checkpoint progress;
+
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger inserted = new AtomicInteger();
+
+    private BulkRunner(Checkpoint progress) {
+        this.progress = progress;
+    }
+
+    private void process(BulkJob job) {
+
+        long start = System.nanoTime();
+        ReportContext.set(0, job.labId);
+
+        String error;
+
+        try {
+            error = run(job);
+        } catch (RuntimeException e) {
+            error = e.getMessage();
+        } finally {
+            ReportContext.clear();
+        }
+
+        EngineMetrics.record("report_total", start);
+
+        String status = error == null ? "DONE" : "FAILED";
+        EngineMetrics.count("reports_total", "status", status);
+        progress.record(status, job.file);
+
+        if (error == null) {
+            done.incrementAndGet();
+        } else {
+            failed.incrementAndGet();
+            System.out.println("FAILED " + job.file + ": " + error);
+        }
+    }
+
+    // Returns null on success, otherwise the reason it failed
+    private String run(BulkJob job) {
+
+        PDFExtractorEngine extractor = new PDFExtractorEngine();
+
+        long t = System.nanoTime();
+        String text = extractor.extractAndSave(job.file);
+        EngineMetrics.record("extract", t);
+
+        if (text == null) {
+            return "PDF extraction failed";
+        }
+
+        ReportHeader header = ReportHeader.parse(text);
+
+        t = System.nanoTime();
+        Patient patient = patients.resolve(job.patientId, header);
+        EngineMetrics.record("patient_lookup", t);
+
+        if (patient == null) {
+            return "patient " + (job.patientId > 0
+                    ? String.valueOf(job.patientId)
+                    : "with MR Number " + header.mrNumber) + " not found";
+        }
+
+        if (patient.mrNumberDiffers(header.mrNumber)) {
+            return "MR Number mismatch, expected " + patient.mrNumber;
+        }
+
+        if (!patient.isNamedIn(header.patientNameOr(text))) {
+            return "patient name mismatch, expected " + patient.name;
+        }
+
+        t = System.nanoTime();
+        LabValidator lab = labCache.get(job.labId);
+        EngineMetrics.record("load_parameters", t);
+
+        t = System.nanoTime();
+        ResultBatch results = engine.validateBatch(text, lab);
+        EngineMetrics.record("validate", t);
+
+        int matched = 0;
+
+        for (int i = 0; i < results.size(); i++) {
+
+            ResultStatus status = results.status(i);
+
+            EngineMetrics.count("validation_results_total", "status", status.label());
+
+            if (results.isAbnormal(i)) {
+                EngineMetrics.count("abnormal_results_total", "flag", results.abnormalityText(i));
+            }
+
+            if (status.isMatch() && results.hasValue(i)) {
+                matched++;
+            }
+        }
+
+        t = System.nanoTime();
+        Map<String, Integer> rowCounts =
+                db.insertPatientResults(patient.patientId, job.labId, results);
+        EngineMetrics.record("persist", t);
+
+        saveRows(job, results);
+
+        if (matched > 0 && rowCounts.isEmpty()) {
+            return "result batch rolled back";
+        }
+
+        int rows = 0;
+        for (Integer n : rowCounts.values()) {
+            if (n != null && n > 0) {
+                rows++;
+            }
+        }
+        inserted.addAndGet(rows);
+
+        System.out.println("DONE " + job.file + " (" + results.size()
+                + " parameters, " + rows + " inserted)");
+
+        return null;
+    }
+
+    private void saveRows(BulkJob job, ResultBatch results) {
+
+        long t = System.nanoTime();
+        int reportId = rowStore.reportIdFor(job.file);
+        if (reportId != 0) {
+            rowStore.saveRows(reportId, job.labId, results);
+        }
+        EngineMetrics.record("save_rows", t);
+    }
+
+    // ======================================================
+    // CHECKPOINT
+    // Append-only "STATUS<TAB>file" lines, flushed per report.
+    // On restart only DONE files are skipped; FAILED ones are
+    // retried.
+    // ======================================================
+    private static class Checkpoint {
+
+        private final Set<String> done = new HashSet<>();
+        private final BufferedWriter out;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Checkpoint(Path file) throws IOException {
+
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    int tab = line.indexOf('\t');
+                    if (tab > 0 && line.startsWith("DONE")) {
+                        done.add(line.substring(tab + 1));
+                    }
+                }
+            }
+
+            out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+
+        boolean isDone(String file) {
+            return done.contains(file);
+        }
+
+        void record(String status, String file) {
+
+            lock.lock();
+            try {
+                out.write(status + "\t" + file);
+                out.newLine();
+                out.flush();
+            } catch (IOException e) {
+                System.out.println("Checkpoint write error: " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            try {
+                out.close();
+            } catch (IOException e) {
+                System.out.println("Checkpoint close error: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package engine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// =========================================================
+// COLUMN TEMPLATE
+// Left boundaries (x, in PDF points) of the result table
+// columns, learned from the header row
+//
+//   Test Name     Result   Unit   Bio.Ref.Range   Method
+//
+// A lab prints every report with the same layout, so the
+// template is learned once and kept per lab. A header row at
+// different positions replaces it.
+// =========================================================
+public class ColumnTemplate {
+
+    public static final int NAME = 0;
+    public static final int RESULT = 1;
+    public static final int UNIT = 2;
+    public static final int RANGE = 3;
+    public static final int METHOD = 4;
+
+    public static final int COLUMNS = 5;
+
+    // Header positions closer than this are the same layout
+    private static final float SAME_LAYOUT_PT = 3f;
+
+    private static final Map<Integer, ColumnTemplate> BY_LAB = new ConcurrentHashMap<>();
+
+    // starts[c]: left boundary of column c, NaN when the header
+    // has no such column (its cells then go to the column left)
+    private final float[] starts;
+
+    private ColumnTemplate(float[] starts) {
+        this.starts = starts;
+    }
+
+    // =========================================================
+    // PER-LAB CACHE
+    // =========================================================
+    public static ColumnTemplate forLab(int labId) {
+        return BY_LAB.get(labId);
+    }
+
+    public static void remember(int labId, ColumnTemplate template) {
+        BY_LAB.put(labId, template);
+    }
+
+    public static void forget(int labId) {
+        BY_LAB.remove(labId);
+    }
+
+    // =========================================================
+    // LEARN FROM A HEADER ROW
+    // Returns null unless the line has both "Result" and
+    // "Method". A column starts a little left of its header word
+    // (half the gap to the previous word, at most two glyph
+    // heights) since values are not always aligned exactly.
+    // =========================================================
+    static ColumnTemplate fromHeader(List<TableTextStripper.Word> line) {
+
+        int[] header = new int[COLUMNS];
+        Arrays.fill(header, -1);
+
+        for (int w = 0; w < line.size(); w++) {
+
+            String text = line.get(w).text.toLowerCase();
+
+            if (text.equals("result") || text.equals("results")) {
+                header[RESULT] = w;
+            } else if (text.equals("unit") || text.equals("units")) {
+                header[UNIT] = w;
+            } else if (header[RANGE] < 0
+                    && (text.contains("range") || text.startsWith("ref") || text.startsWith("bio."))) {
+                header[RANGE] = w;
+            } else if (text.equals("method")) {
+                header[METHOD] = w;
+            }
+        }
+
+        if (header[RESULT] < 0 || header[METHOD] < 0) {
+            return null;
+        }
+
+        float[] starts = new float[COLUMNS];
+        starts[NAME] = 0f;
+
+        for (int c = RESULT; c < COLUMNS; c++) {
+
+            if (header[c] <= 0) {
+                starts[c] = Float.NaN;
+                continue;
+            }
+
+            TableTextStripper.Word word = line.get(header[c]);
+            TableTextStripper.Word previous = line.get(header[c] - 1);
+
+            float slack = Math.min((word.x - previous.xEnd) / 2, 2 * word.height);
+            starts[c] = word.x - Math.max(0f, slack);
+        }
+
+        return new ColumnTemplate(starts);
+    }
+
+    // =========================================================
+    // LOOKUP
+    // =========================================================
+
+    // Column of a word starting at x
+    public int columnOf(float x) {
+
+        for (int c = COLUMNS - 1; c > NAME; c--) {
+            if (!Float.isNaN(starts[c]) && x >= starts[c]) {
+                return c;
+            }
+        }
+
+        return NAME;
+    }
+
+    public boolean sameLayout(ColumnTemplate other) {
+
+        for (int c = 0; c < COLUMNS; c++) {
+
+            float a = starts[c];
+            float b = other.starts[c];
+
+            if (Float.isNaN(a) != Float.isNaN(b)) {
+                return false;
+            }
+            if (!Float.isNaN(a) && Math.abs(a - b) > SAME_LAYOUT_PT) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnTemplate" + Arrays.toString(starts);
+    }
+}
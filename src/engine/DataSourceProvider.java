@@ -0,0 +1,93 @@
+package engine;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+// =========================================================
+// SHARED CONNECTION POOL
+// One HikariCP pool per JVM, used by both the engine and the
+// queue engine. Created on first use from DbConfig.
+// Initialisation uses a ReentrantLock rather than synchronized
+// so virtual threads waiting for the pool do not pin carriers.
+// =========================================================
+public final class DataSourceProvider {
+
+    private static volatile HikariDataSource dataSource;
+    private static volatile DbConfig config;
+
+    private static final ReentrantLock LOCK = new ReentrantLock();
+
+    private DataSourceProvider() {
+    }
+
+    public static HikariDataSource get() {
+
+        HikariDataSource ds = dataSource;
+        if (ds != null) {
+            return ds;
+        }
+
+        LOCK.lock();
+        try {
+            if (dataSource == null) {
+                dataSource = create(config());
+            }
+            return dataSource;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    // Configuration the pool is (or will be) built from; also used
+    // for dedicated non-pooled connections such as LISTEN sessions
+    public static DbConfig config() {
+
+        DbConfig c = config;
+        if (c != null) {
+            return c;
+        }
+
+        LOCK.lock();
+        try {
+            if (config == null) {
+                config = DbConfig.load();
+            }
+            return config;
+        } finally {
+            LOCK.unlock();
+        }
+    }
+
+    private static HikariDataSource create(DbConfig db) {
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("diagnoiq");
+        config.setJdbcUrl(db.url);
+        config.setUsername(db.user);
+        config.setPassword(db.password);
+        config.setMaximumPoolSize(db.poolSize);
+
+        // Server-side prepared statements, cached per connection
+        config.addDataSourceProperty("prepareThreshold", db.prepareThreshold);
+        config.addDataSourceProperty("preparedStatementCacheQueries",
+                db.preparedStatementCacheQueries);
+
+        config.setMetricsTrackerFactory(new DbMetrics());
+
+        return new HikariDataSource(config);
+    }
+
+    public static void close() {
+        LOCK.lock();
+        try {
+            if (dataSource != null) {
+                dataSource.close();
+                dataSource = null;
+            }
+        } finally {
+            LOCK.unlock();
+        }
+    }
+}
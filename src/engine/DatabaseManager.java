@@ -1,27 +1,45 @@
 package engine;
 
-import com.zaxxer.hikari.HikariConfig;
-import com.zaxxer.hikari.HikariDataSource;
-
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 public class DatabaseManager {
 
-    private static final String DB_URL = "jdbc:postgresql://localhost:5432/patient_data";
-    private static final String DB_USER = "postgres";
-    private static final String DB_PASSWORD = "ajw12345";
+    private static final String UPDATE_RESULT_SQL = "UPDATE poc.patientresult " +
+            "SET value = ?, " +
+            "abnormality = CASE " +
+            "   WHEN minrange IS NOT NULL AND ? < minrange THEN -1 " +
+            "   WHEN maxrange IS NOT NULL AND ? > maxrange THEN 1 " +
+            "   ELSE 0 " +
+            "END, " +
+            "resultstatus = 'COMPLETED' " +
+            "WHERE patientid = ? " +
+            "AND labid = ? " +
+            "AND parametername = ?";
 
-    private static HikariDataSource dataSource;
+    // Abnormality computed by the engine when it knows the range
+    // (poc.referencerange), otherwise by the old CASE on the row
+    private static final String UPDATE_FLAGGED_RESULT_SQL = "UPDATE poc.patientresult " +
+            "SET value = ?, " +
+            "abnormality = COALESCE(?, CASE " +
+            "   WHEN minrange IS NOT NULL AND ? < minrange THEN -1 " +
+            "   WHEN maxrange IS NOT NULL AND ? > maxrange THEN 1 " +
+            "   ELSE 0 " +
+            "END), " +
+            "resultstatus = 'COMPLETED' " +
+            "WHERE patientid = ? " +
+            "AND labid = ? " +
+            "AND parametername = ?";
 
-    static {
-        HikariConfig config = new HikariConfig();
-        config.setJdbcUrl(DB_URL);
-        config.setUsername(DB_USER);
-        config.setPassword(DB_PASSWORD);
-        config.setMaximumPoolSize(5);
-        dataSource = new HikariDataSource(config);
+    // =========================================================
+    // POOLED CONNECTION (shared pool, see DataSourceProvider)
+    // =========================================================
+    protected Connection getConnection() throws SQLException {
+        return DataSourceProvider.get().getConnection();
     }
 
     public Map<String, String> loadParametersWithMethod(int labId) {
@@ -33,7 +51,9 @@ public class DatabaseManager {
                 "JOIN poc.TestParameter tp ON tg.TestGroupId = tp.TestGroupId " +
                 "WHERE tg.LabID = ?";
 
-        try (Connection conn = dataSource.getConnection();
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("loadParametersWithMethod");
+
+        try (Connection conn = getConnection();
                 PreparedStatement ps = conn.prepareStatement(query)) {
 
             ps.setInt(1, labId);
@@ -45,20 +65,80 @@ public class DatabaseManager {
                         rs.getString("Method"));
             }
 
+            timer.rows(map.size());
             System.out.println("Loaded parameters from DB: " + map.size());
 
         } catch (SQLException e) {
             System.err.println("DB Error: " + e.getMessage());
+        } finally {
+            timer.stop();
         }
 
         return map;
     }
 
+    // =========================================================
+    // REFERENCE RANGES OF A LAB (all genders / age bands)
+    // =========================================================
+    public List<ReferenceRanges.Range> loadReferenceRanges(int labId) {
+
+        List<ReferenceRanges.Range> ranges = new ArrayList<>();
+
+        String query = "SELECT parametername, gender, agemin, agemax, minrange, maxrange " +
+                "FROM poc.referencerange " +
+                "WHERE labid = ?";
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("loadReferenceRanges");
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setInt(1, labId);
+            ResultSet rs = ps.executeQuery();
+
+            while (rs.next()) {
+
+                String gender = rs.getString("gender");
+
+                int ageMin = rs.getInt("agemin");
+                int ageMax = rs.getInt("agemax");
+                if (rs.wasNull()) {
+                    ageMax = Integer.MAX_VALUE;
+                }
+
+                double min = rs.getDouble("minrange");
+                if (rs.wasNull()) {
+                    min = Double.NaN;
+                }
+                double max = rs.getDouble("maxrange");
+                if (rs.wasNull()) {
+                    max = Double.NaN;
+                }
+
+                ranges.add(new ReferenceRanges.Range(
+                        rs.getString("parametername"),
+                        gender == null || gender.isBlank() ? null : gender.trim().toUpperCase(),
+                        ageMin, ageMax, min, max));
+            }
+
+            timer.rows(ranges.size());
+
+        } catch (SQLException e) {
+            System.err.println("DB Error: " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+
+        return ranges;
+    }
+
     public String findPatientNameById(int patientId) {
 
         String query = "SELECT name FROM poc.patient WHERE patientid = ?";
 
-        try (Connection conn = dataSource.getConnection();
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("findPatientNameById");
+
+        try (Connection conn = getConnection();
                 PreparedStatement ps = conn.prepareStatement(query)) {
 
             ps.setInt(1, patientId);
@@ -70,31 +150,164 @@ public class DatabaseManager {
 
         } catch (SQLException e) {
             System.err.println("DB Error: " + e.getMessage());
+        } finally {
+            timer.stop();
         }
 
         return null;
     }
 
+    // =========================================================
+    // SCHEMA CHECK (sql/patient_identity.sql)
+    // Every patient lookup reads poc.patient.mrnumber: without it
+    // no patient can be identified, so returns false and the
+    // runner does not start. A database that cannot be reached is
+    // not judged here (returns true, checked again next call).
+    // =========================================================
+    // null = not checked yet
+    private volatile Boolean hasMrNumber;
+
+    public boolean checkPatientSchema() {
+
+        if (hasMrNumber != null) {
+            return hasMrNumber;
+        }
+
+        Boolean mrNumber = columnExists("patient", "mrnumber");
+
+        if (mrNumber == null) {
+            return true;
+        }
+
+        if (!mrNumber) {
+            System.out.println("poc.patient.mrnumber is missing: run sql/patient_identity.sql"
+                    + " before starting the engine.");
+        }
+
+        hasMrNumber = mrNumber;
+        return mrNumber;
+    }
+
+    // Column of a poc table; null when the check itself failed
+    protected Boolean columnExists(String table, String column) {
+
+        String query = "SELECT 1 FROM information_schema.columns " +
+                "WHERE table_schema = 'poc' AND table_name = ? AND column_name = ?";
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setString(1, table);
+            ps.setString(2, column);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Schema check error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // =========================================================
+    // PATIENT IDENTITY (see PatientCache)
+    // =========================================================
+    private static final String PATIENT_COLUMNS =
+            "SELECT patientid, name, mrnumber FROM poc.patient ";
+
+    public Patient findPatientById(int patientId) {
+        return findPatient("findPatientById",
+                PATIENT_COLUMNS + "WHERE patientid = ?", patientId);
+    }
+
+    public Patient findPatientByMrNumber(String mrNumber) {
+        return findPatient("findPatientByMrNumber",
+                PATIENT_COLUMNS + "WHERE mrnumber = ?", mrNumber);
+    }
+
+    // All patients among the ids, in one round trip
+    public List<Patient> findPatientsByIds(List<Integer> patientIds) {
+        return findPatients("findPatientsByIds",
+                PATIENT_COLUMNS + "WHERE patientid = ANY(?)", "integer", patientIds);
+    }
+
+    // All patients among the MR numbers, in one round trip
+    public List<Patient> findPatientsByMrNumbers(List<String> mrNumbers) {
+        return findPatients("findPatientsByMrNumbers",
+                PATIENT_COLUMNS + "WHERE mrnumber = ANY(?)", "text", mrNumbers);
+    }
+
+    private List<Patient> findPatients(String name, String query,
+            String keyType, List<?> keys) {
+
+        List<Patient> patients = new ArrayList<>();
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery(name);
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setArray(1, conn.createArrayOf(keyType, keys.toArray()));
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    patients.add(readPatient(rs));
+                }
+            }
+
+            timer.rows(patients.size());
+
+        } catch (SQLException e) {
+            System.err.println("DB Error: " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+
+        return patients;
+    }
+
+    private Patient findPatient(String name, String query, Object key) {
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery(name);
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setObject(1, key);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                if (rs.next()) {
+                    return readPatient(rs);
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("DB Error: " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+
+        return null;
+    }
+
+    private static Patient readPatient(ResultSet rs) throws SQLException {
+        return new Patient(
+                rs.getInt("patientid"),
+                rs.getString("name"),
+                rs.getString("mrnumber"));
+    }
+
     public void insertPatientResult(
             int patientId,
             int labId,
             String parameterName,
             double value) {
 
-        String query = "UPDATE poc.patientresult " +
-                "SET value = ?, " +
-                "abnormality = CASE " +
-                "   WHEN minrange IS NOT NULL AND ? < minrange THEN -1 " +
-                "   WHEN maxrange IS NOT NULL AND ? > maxrange THEN 1 " +
-                "   ELSE 0 " +
-                "END, " +
-                "resultstatus = 'COMPLETED' " +
-                "WHERE patientid = ? " +
-                "AND labid = ? " +
-                "AND parametername = ?";
-
-        try (Connection conn = dataSource.getConnection();
-                PreparedStatement ps = conn.prepareStatement(query)) {
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("insertPatientResult");
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(UPDATE_RESULT_SQL)) {
 
             ps.setDouble(1, value); // value column
             ps.setDouble(2, value); // for < minrange
@@ -113,7 +326,150 @@ public class DatabaseManager {
 
         } catch (Exception e) {
             System.err.println("Insert Error: " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+    }
+
+    // =========================================================
+    // BATCH INSERT (one connection, one transaction, one batch)
+    // Returns rows updated per parameter, in input order.
+    // On failure the whole report is rolled back and an empty
+    // map is returned.
+    // =========================================================
+    public Map<String, Integer> insertPatientResults(
+            int patientId,
+            int labId,
+            Map<String, Double> values) {
+
+        Map<String, Integer> rowCounts = new LinkedHashMap<>();
+
+        if (values.isEmpty()) {
+            return rowCounts;
+        }
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("insertPatientResults");
+
+        try (Connection conn = getConnection()) {
+
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_RESULT_SQL)) {
+
+                for (Map.Entry<String, Double> e : values.entrySet()) {
+
+                    double value = e.getValue();
+
+                    ps.setDouble(1, value);
+                    ps.setDouble(2, value);
+                    ps.setDouble(3, value);
+                    ps.setInt(4, patientId);
+                    ps.setInt(5, labId);
+                    ps.setString(6, e.getKey());
+                    ps.addBatch();
+                }
+
+                int[] counts = ps.executeBatch();
+                conn.commit();
+
+                int i = 0;
+                for (String parameterName : values.keySet()) {
+                    rowCounts.put(parameterName, counts[i++]);
+                }
+
+                timer.rows(counts.length);
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Batch Insert Error: " + e.getMessage());
+            rowCounts.clear();
+        } finally {
+            timer.stop();
         }
+
+        return rowCounts;
     }
 
+    // =========================================================
+    // BATCH INSERT FROM A RESULT BATCH
+    // Writes every MATCH row with a value, with the abnormality
+    // flag computed during validation (NULL = let SQL decide).
+    // Same transaction / return rules as above.
+    // =========================================================
+    public Map<String, Integer> insertPatientResults(
+            int patientId,
+            int labId,
+            ResultBatch results) {
+
+        Map<String, Integer> rowCounts = new LinkedHashMap<>();
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("insertPatientResults");
+
+        try (Connection conn = getConnection()) {
+
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement ps = conn.prepareStatement(UPDATE_FLAGGED_RESULT_SQL)) {
+
+                List<String> written = new ArrayList<>();
+
+                for (int i = 0; i < results.size(); i++) {
+
+                    if (!results.status(i).isMatch() || !results.hasValue(i)) {
+                        continue;
+                    }
+
+                    double value = results.value(i);
+
+                    ps.setDouble(1, value);
+                    if (results.hasAbnormality(i)) {
+                        ps.setInt(2, results.abnormality(i));
+                    } else {
+                        ps.setNull(2, Types.INTEGER);
+                    }
+                    ps.setDouble(3, value);
+                    ps.setDouble(4, value);
+                    ps.setInt(5, patientId);
+                    ps.setInt(6, labId);
+                    ps.setString(7, results.parameter(i));
+                    ps.addBatch();
+
+                    written.add(results.parameter(i));
+                }
+
+                if (written.isEmpty()) {
+                    return rowCounts;
+                }
+
+                int[] counts = ps.executeBatch();
+                conn.commit();
+
+                for (int i = 0; i < counts.length; i++) {
+                    rowCounts.put(written.get(i), counts[i]);
+                }
+
+                timer.rows(counts.length);
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Batch Insert Error: " + e.getMessage());
+            rowCounts.clear();
+        } finally {
+            timer.stop();
+        }
+
+        return rowCounts;
+    }
 }
@@ -0,0 +1,70 @@
+package engine;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+// =========================================================
+// DATABASE CONFIGURATION
+// Read from (lowest to highest priority):
+//   1. built-in defaults (local dev database, no password)
+//   2. db.properties (or the file named by -Ddiagnoiq.db.config)
+//   3. environment variables DIAGNOIQ_DB_URL, DIAGNOIQ_DB_USER,
+//      DIAGNOIQ_DB_PASSWORD, DIAGNOIQ_DB_POOL_SIZE
+// See db.properties.example in the project root.
+// =========================================================
+public class DbConfig {
+
+    public final String url;
+    public final String user;
+    public final String password;
+    public final int poolSize;
+
+    // pgjdbc server-side prepared statements:
+    // switch to a named server statement after this many executions
+    public final int prepareThreshold;
+    // per-connection cache of prepared queries
+    public final int preparedStatementCacheQueries;
+
+    private DbConfig(Properties p) {
+        this.url = p.getProperty("db.url", "jdbc:postgresql://localhost:5432/patient_data");
+        this.user = p.getProperty("db.user", "postgres");
+        this.password = p.getProperty("db.password", "");
+        this.poolSize = Integer.parseInt(p.getProperty("db.poolSize", "5"));
+        this.prepareThreshold = Integer.parseInt(p.getProperty("db.prepareThreshold", "1"));
+        this.preparedStatementCacheQueries =
+                Integer.parseInt(p.getProperty("db.preparedStatementCacheQueries", "256"));
+    }
+
+    public static DbConfig load() {
+
+        Properties p = new Properties();
+
+        Path file = Paths.get(System.getProperty("diagnoiq.db.config", "db.properties"));
+
+        if (Files.exists(file)) {
+            try (InputStream in = Files.newInputStream(file)) {
+                p.load(in);
+                System.out.println("DB config loaded from: " + file.toAbsolutePath());
+            } catch (Exception e) {
+                System.err.println("DB config read error: " + e.getMessage());
+            }
+        }
+
+        override(p, "db.url", "DIAGNOIQ_DB_URL");
+        override(p, "db.user", "DIAGNOIQ_DB_USER");
+        override(p, "db.password", "DIAGNOIQ_DB_PASSWORD");
+        override(p, "db.poolSize", "DIAGNOIQ_DB_POOL_SIZE");
+
+        return new DbConfig(p);
+    }
+
+    private static void override(Properties p, String key, String envName) {
+        String value = System.getenv(envName);
+        if (value != null && !value.isEmpty()) {
+            p.setProperty(key, value);
+        }
+    }
+}
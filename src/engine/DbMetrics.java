@@ -0,0 +1,132 @@
+package engine;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// =========================================================
+// DATABASE METRICS
+// Pool wait / usage come from HikariCP's metrics tracker,
+// query time is recorded by DatabaseManager per query name.
+// =========================================================
+public class DbMetrics implements MetricsTrackerFactory {
+
+    public static final LatencyHistogram POOL_WAIT = new LatencyHistogram();
+    public static final LatencyHistogram CONNECTION_USAGE = new LatencyHistogram();
+    public static final LongAdder POOL_TIMEOUTS = new LongAdder();
+
+    private static final Map<String, LatencyHistogram> QUERIES = new ConcurrentHashMap<>();
+
+    private static volatile PoolStats poolStats;
+
+    // =========================================================
+    // QUERY TIMING
+    // =========================================================
+    public static void recordQuery(String name, long startNanos) {
+        QUERIES.computeIfAbsent(name, k -> new LatencyHistogram())
+                .recordNanos(System.nanoTime() - startNanos);
+    }
+
+    // Starts timing a query; also opens a JFR DbCall event tagged
+    // with the report being processed on this thread.
+    public static QueryTimer startQuery(String name) {
+        return new QueryTimer(name);
+    }
+
+    public static final class QueryTimer {
+
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final ReportEvents.DbCallEvent event = new ReportEvents.DbCallEvent();
+
+        private QueryTimer(String name) {
+            this.name = name;
+            event.begin();
+        }
+
+        public void rows(int rowCount) {
+            event.rowCount = rowCount;
+        }
+
+        public void stop() {
+
+            recordQuery(name, startNanos);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.query = name;
+                event.reportId = ReportContext.reportId();
+                event.labId = ReportContext.labId();
+                event.commit();
+            }
+        }
+    }
+
+    public static Map<String, LatencyHistogram> queries() {
+        return new TreeMap<>(QUERIES);
+    }
+
+    public static PoolStats poolStats() {
+        return poolStats;
+    }
+
+    // =========================================================
+    // TEXT REPORT
+    // =========================================================
+    public static String report() {
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("Pool wait        : ").append(POOL_WAIT.summary()).append('\n');
+        sb.append("Connection usage : ").append(CONNECTION_USAGE.summary()).append('\n');
+        sb.append("Pool timeouts    : ").append(POOL_TIMEOUTS.sum()).append('\n');
+
+        PoolStats stats = poolStats;
+        if (stats != null) {
+            sb.append("Pool connections : total=").append(stats.getTotalConnections())
+                    .append(" active=").append(stats.getActiveConnections())
+                    .append(" idle=").append(stats.getIdleConnections())
+                    .append(" waiting=").append(stats.getPendingThreads())
+                    .append('\n');
+        }
+
+        for (Map.Entry<String, LatencyHistogram> e : queries().entrySet()) {
+            sb.append("Query ").append(e.getKey()).append(" : ")
+                    .append(e.getValue().summary()).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    // =========================================================
+    // HIKARI HOOK
+    // =========================================================
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats stats) {
+
+        poolStats = stats;
+
+        return new IMetricsTracker() {
+
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                POOL_WAIT.recordNanos(elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                CONNECTION_USAGE.recordMillis(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                POOL_TIMEOUTS.increment();
+            }
+        };
+    }
+}
@@ -0,0 +1,180 @@
+package engine;
+
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// =========================================================
+// ENGINE METRICS REGISTRY
+// Per-stage latency histograms, counters and gauges for the
+// engine and the queue engine. Rendered as Prometheus text by
+// MetricsHttpServer, or as a plain summary for the console.
+// =========================================================
+public final class EngineMetrics {
+
+    private static final int FIRST_EXPORTED_BUCKET = 7;
+    private static final int LAST_EXPORTED_BUCKET = 26;
+
+    private static final Map<String, LatencyHistogram> STAGES = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static final Map<String, AtomicLong> GAUGES = new ConcurrentHashMap<>();
+
+    // Run before every scrape (e.g. to refresh DB-backed gauges)
+    private static final List<Runnable> COLLECTORS = new CopyOnWriteArrayList<>();
+
+    private EngineMetrics() {
+    }
+
+    // =========================================================
+    // STAGE LATENCY
+    // =========================================================
+    public static LatencyHistogram stage(String stage) {
+        return STAGES.computeIfAbsent(stage, k -> new LatencyHistogram());
+    }
+
+    // Records the time since startNanos under the given stage
+    public static void record(String stage, long startNanos) {
+        stage(stage).recordNanos(System.nanoTime() - startNanos);
+    }
+
+    // =========================================================
+    // COUNTERS  e.g. count("reports_total", "status", "DONE")
+    // =========================================================
+    public static void count(String name) {
+        counter(name, null, null).increment();
+    }
+
+    public static void count(String name, String label, String value) {
+        counter(name, label, value).increment();
+    }
+
+    public static void count(String name, String label, String value, long n) {
+        counter(name, label, value).add(n);
+    }
+
+    private static LongAdder counter(String name, String label, String value) {
+        return COUNTERS.computeIfAbsent(series(name, label, value), k -> new LongAdder());
+    }
+
+    // =========================================================
+    // GAUGES
+    // =========================================================
+    public static void setGauge(String name, long value) {
+        GAUGES.computeIfAbsent(name, k -> new AtomicLong()).set(value);
+    }
+
+    public static void addCollector(Runnable collector) {
+        COLLECTORS.add(collector);
+    }
+
+    private static String series(String name, String label, String value) {
+        if (label == null) {
+            return name;
+        }
+        return name + "{" + label + "=\"" + value.replace("\"", "'") + "\"}";
+    }
+
+    // =========================================================
+    // PROMETHEUS TEXT FORMAT
+    // =========================================================
+    public static String prometheus() {
+
+        for (Runnable collector : COLLECTORS) {
+            try {
+                collector.run();
+            } catch (RuntimeException e) {
+                System.err.println("Metrics collector error: " + e.getMessage());
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+
+        sb.append("# TYPE diagnoiq_stage_seconds histogram\n");
+        for (Map.Entry<String, LatencyHistogram> e : new TreeMap<>(STAGES).entrySet()) {
+            appendHistogram(sb, "diagnoiq_stage_seconds", "stage", e.getKey(), e.getValue());
+        }
+
+        sb.append("# TYPE diagnoiq_db_query_seconds histogram\n");
+        for (Map.Entry<String, LatencyHistogram> e : DbMetrics.queries().entrySet()) {
+            appendHistogram(sb, "diagnoiq_db_query_seconds", "query", e.getKey(), e.getValue());
+        }
+
+        sb.append("# TYPE diagnoiq_db_pool_wait_seconds histogram\n");
+        appendHistogram(sb, "diagnoiq_db_pool_wait_seconds", null, null, DbMetrics.POOL_WAIT);
+
+        sb.append("# TYPE diagnoiq_db_pool_timeouts_total counter\n");
+        sb.append("diagnoiq_db_pool_timeouts_total ").append(DbMetrics.POOL_TIMEOUTS.sum()).append('\n');
+
+        PoolStats pool = DbMetrics.poolStats();
+        if (pool != null) {
+            sb.append("diagnoiq_db_pool_active ").append(pool.getActiveConnections()).append('\n');
+            sb.append("diagnoiq_db_pool_idle ").append(pool.getIdleConnections()).append('\n');
+            sb.append("diagnoiq_db_pool_waiting ").append(pool.getPendingThreads()).append('\n');
+        }
+
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            sb.append("diagnoiq_").append(e.getKey()).append(' ')
+                    .append(e.getValue().sum()).append('\n');
+        }
+
+        for (Map.Entry<String, AtomicLong> e : new TreeMap<>(GAUGES).entrySet()) {
+            sb.append("diagnoiq_").append(e.getKey()).append(' ')
+                    .append(e.getValue().get()).append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb,
+            String name,
+            String label,
+            String value,
+            LatencyHistogram h) {
+
+        String labels = label == null ? "" : label + "=\"" + value + "\",";
+        long[] cumulative = h.cumulativeCounts();
+
+        // Fixed bucket range ~0.13ms .. ~67s (same le set on every scrape)
+        for (int i = FIRST_EXPORTED_BUCKET; i <= LAST_EXPORTED_BUCKET; i++) {
+            sb.append(name).append("_bucket{").append(labels)
+                    .append("le=\"").append(LatencyHistogram.bucketUpperBoundMillis(i) / 1000.0)
+                    .append("\"} ").append(cumulative[i]).append('\n');
+        }
+
+        long count = cumulative[cumulative.length - 1];
+        String plainLabels = label == null ? "" : "{" + label + "=\"" + value + "\"}";
+
+        sb.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ")
+                .append(count).append('\n');
+        sb.append(name).append("_sum").append(plainLabels).append(' ')
+                .append(h.getTotalMillis() / 1000.0).append('\n');
+        sb.append(name).append("_count").append(plainLabels).append(' ')
+                .append(count).append('\n');
+    }
+
+    // =========================================================
+    // CONSOLE SUMMARY
+    // =========================================================
+    public static String summary() {
+
+        StringBuilder sb = new StringBuilder();
+
+        List<String> stages = new ArrayList<>(new TreeMap<>(STAGES).keySet());
+        for (String stage : stages) {
+            sb.append(String.format("%-18s: %s%n", stage, STAGES.get(stage).summary()));
+        }
+
+        for (Map.Entry<String, LongAdder> e : new TreeMap<>(COUNTERS).entrySet()) {
+            sb.append(e.getKey()).append(" = ").append(e.getValue().sum()).append('\n');
+        }
+
+        return sb.toString();
+    }
+}
@@ -1,19 +1,9 @@
 package engine;
 
-import java.util.List;
 import java.util.Map;
 
 public class EngineRunner {
 
-    // ======================================================
-    // NORMALIZE STRING (Ignore dots, spaces, case)
-    // ======================================================
-    private static String normalize(String s) {
-        if (s == null) return "";
-        return s.replaceAll("[^a-zA-Z]", "")
-                .toLowerCase();
-    }
-
     // ======================================================
     // MAIN
     // ======================================================
@@ -24,14 +14,27 @@ public class EngineRunner {
         System.out.println("=================================");
 
         int labId = 1;
-        int patientId = 1;   // YOU PROVIDE THIS
+        // 0 = identify the patient by the MR Number in the header
+        int patientId = args.length > 0 ? Integer.parseInt(args[0]) : 0;
         String pdfPath = "pdf/report.pdf";
 
+        // tags JFR events (no queue report id in this runner)
+        ReportContext.set(0, labId);
+
+        DatabaseManager db = new DatabaseManager();
+
+        if (!db.checkPatientSchema()) {
+            return;
+        }
+
         // ======================================================
         // STEP 1 - Extract PDF
         // ======================================================
         PDFExtractorEngine extractor = new PDFExtractorEngine();
+
+        long t = System.nanoTime();
         String text = extractor.extractAndSave(pdfPath);
+        EngineMetrics.record("extract", t);
 
         if (text == null) {
             System.out.println("PDF extraction failed.");
@@ -39,26 +42,33 @@ public class EngineRunner {
         }
 
         // ======================================================
-        // STEP 2 - Fetch Patient Name From DB
+        // STEP 2 - Fetch Patient From DB (by id or header MR Number)
         // ======================================================
-        DatabaseManager db = new DatabaseManager();
+        ReportHeader header = ReportHeader.parse(text);
 
-        String dbPatientName = db.findPatientNameById(patientId);
+        t = System.nanoTime();
+        Patient patient = new PatientCache(db).resolve(patientId, header);
+        EngineMetrics.record("patient_lookup", t);
 
-        if (dbPatientName == null) {
-            System.out.println("Patient ID not found in database.");
+        if (patient == null) {
+            System.out.println("Patient not found in database (id " + patientId
+                    + ", MR Number " + header.mrNumber + ").");
             return;
         }
 
-        System.out.println("Patient Name in DB: " + dbPatientName);
+        patientId = patient.patientId;
+
+        System.out.println("Patient Name in DB: " + patient.name);
 
         // ======================================================
-        // STEP 3 - Check If DB Name Exists In PDF Text
+        // STEP 3 - Check If DB Name Exists In PDF Header
         // ======================================================
-        if (!normalize(text).contains(normalize(dbPatientName))) {
+        if (patient.mrNumberDiffers(header.mrNumber)
+                || !patient.isNamedIn(header.patientNameOr(text))) {
 
             System.out.println("\n❌ ERROR: Patient name not found in PDF!");
-            System.out.println("Expected Name: " + dbPatientName);
+            System.out.println("Expected Name: " + patient.name
+                    + (patient.mrNumber != null ? " (MR " + patient.mrNumber + ")" : ""));
             System.out.println("Processing stopped.");
             return;
         }
@@ -68,11 +78,13 @@ public class EngineRunner {
         // ======================================================
         // STEP 4 - Load DB Parameters
         // ======================================================
-        Map<String, String> paramMap =
-                db.loadParametersWithMethod(labId);
+        LabValidatorCache labCache = new LabValidatorCache(db);
+        t = System.nanoTime();
+        LabValidator lab = labCache.get(labId);
+        EngineMetrics.record("load_parameters", t);
 
         System.out.println("Loaded parameters from DB: "
-                + paramMap.size());
+                + lab.size());
 
         // ======================================================
         // STEP 5 - Validate Methods
@@ -80,8 +92,9 @@ public class EngineRunner {
         MethodValidationEngine engine =
                 new MethodValidationEngine();
 
-        List<MethodValidationEngine.ValidationResult> results =
-                engine.validate(text, paramMap);
+        t = System.nanoTime();
+        ResultBatch results = engine.validateBatch(text, lab);
+        EngineMetrics.record("validate", t);
 
         // ======================================================
         // STEP 6 - PROCESS + INSERT
@@ -91,52 +104,75 @@ public class EngineRunner {
         int insertedCount = 0;
         int skippedCount = 0;
 
-        for (var r : results) {
+        for (int i = 0; i < results.size(); i++) {
 
-            System.out.println("-----------------------------------");
-            System.out.println("Parameter : " + r.parameter);
-            System.out.println("Value     : " + r.value);
-            System.out.println("PDF Method: " + r.pdfMethod);
-            System.out.println("DB Method : " + r.dbMethod);
-            System.out.println("STATUS    : " + r.status);
+            ResultStatus status = results.status(i);
 
-            if (r.status.equals("MATCH") ||
-                r.status.equals("MATCH (NO METHOD)")) {
+            System.out.println("-----------------------------------");
+            System.out.println("Parameter : " + results.parameter(i));
+            System.out.println("Value     : " + results.valueText(i));
+            System.out.println("PDF Method: " + results.pdfMethod(i));
+            System.out.println("DB Method : " + results.dbMethod(i));
+            System.out.println("STATUS    : " + status);
+
+            if (results.hasAbnormality(i)) {
+                System.out.println("Flag      : " + results.abnormalityText(i));
+                EngineMetrics.count("abnormal_results_total", "flag", results.abnormalityText(i));
+            }
 
-                if (r.value != null) {
+            if (results.rangeMismatch(i)) {
+                System.out.println("⚠ PDF range " + results.referenceRange(i)
+                        + " differs from the DB reference range");
+                EngineMetrics.count("range_mismatch_total");
+            }
 
-                    try {
-                        double numericValue =
-                                Double.parseDouble(r.value);
+            EngineMetrics.count("validation_results_total", "status", status.label());
 
-                        db.insertPatientResult(
-                                patientId,
-                                labId,
-                                r.parameter,
-                                numericValue
-                        );
+            if (!status.isMatch()) {
 
-                        insertedCount++;
+                System.out.println(
+                        "❌ NOT INSERTED due to method issue: "
+                                + results.parameter(i));
 
-                    } catch (NumberFormatException e) {
+                skippedCount++;
 
-                        System.out.println(
-                                "Invalid numeric value for: "
-                                        + r.parameter);
+            } else if (!results.hasValue(i)) {
+                skippedCount++;
+            }
+        }
 
-                        skippedCount++;
-                    }
+        // ======================================================
+        // STEP 7 - BATCH INSERT (single transaction)
+        // Every MATCH row with a value, with its abnormality flag
+        // ======================================================
+        t = System.nanoTime();
+        Map<String, Integer> rowCounts =
+                db.insertPatientResults(patientId, labId, results);
+        EngineMetrics.record("persist", t);
+
+        // parsed rows, for re-validation after method changes
+        t = System.nanoTime();
+        ExtractedRowStore rowStore = new ExtractedRowStore();
+        int reportId = rowStore.reportIdFor(pdfPath);
+        if (reportId != 0) {
+            rowStore.saveRows(reportId, labId, results);
+        }
+        EngineMetrics.record("save_rows", t);
 
-                } else {
-                    skippedCount++;
-                }
+        for (int i = 0; i < results.size(); i++) {
 
-            } else {
+            if (!results.status(i).isMatch() || !results.hasValue(i)) {
+                continue;
+            }
 
-                System.out.println(
-                        "❌ NOT INSERTED due to method issue: "
-                                + r.parameter);
+            String parameter = results.parameter(i);
+            Integer rows = rowCounts.get(parameter);
 
+            if (rows != null && rows > 0) {
+                System.out.println("Inserted: " + parameter);
+                insertedCount++;
+            } else {
+                System.out.println("No row found for: " + parameter);
                 skippedCount++;
             }
         }
@@ -151,5 +187,11 @@ public class EngineRunner {
         System.out.println("Inserted               : " + insertedCount);
         System.out.println("Skipped                : " + skippedCount);
         System.out.println("=================================");
+
+        System.out.println("\n=================================");
+        System.out.println(" STAGE METRICS ");
+        System.out.println("=================================");
+        System.out.print(EngineMetrics.summary());
+        System.out.println("=================================");
     }
 }
@@ -0,0 +1,299 @@
+package engine;
+
+import java.nio.file.Paths;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+// =========================================================
+// EXTRACTED ROW STORE (poc.extractedrow, see sql/extractedrow.sql)
+// Keeps the parsed rows of every validated report so a method
+// change can be re-checked from the database instead of
+// re-parsing the PDFs. Each row keeps the text its method was
+// looked for in (methodtext), so re-validation runs the current
+// method automaton over it and reaches the same status as
+// re-parsing, also for methods added to the catalogue later.
+// =========================================================
+public class ExtractedRowStore extends DatabaseManager {
+
+    private static final String UPSERT_ROW_SQL = "INSERT INTO poc.extractedrow " +
+            "(reportid, labid, parametername, value, unit, refrange, pdfmethod, methodtext, " +
+            "page, dbmethod, status) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON CONFLICT (reportid, parametername) DO UPDATE SET " +
+            "labid = EXCLUDED.labid, value = EXCLUDED.value, unit = EXCLUDED.unit, " +
+            "refrange = EXCLUDED.refrange, pdfmethod = EXCLUDED.pdfmethod, " +
+            "methodtext = EXCLUDED.methodtext, " +
+            "page = EXCLUDED.page, dbmethod = EXCLUDED.dbmethod, " +
+            "status = EXCLUDED.status, validatedat = CURRENT_TIMESTAMP";
+
+    private static final String UPDATE_STATUS_SQL = "UPDATE poc.extractedrow " +
+            "SET pdfmethod = ?, dbmethod = ?, status = ?, validatedat = CURRENT_TIMESTAMP " +
+            "WHERE reportid = ? AND parametername = ?";
+
+    // Stable negative id per file, see sql/extractedrow.sql
+    private static final String SOURCE_ID_SQL = "INSERT INTO poc.extractedsource (filepath) " +
+            "VALUES (?) ON CONFLICT (filepath) DO UPDATE SET filepath = EXCLUDED.filepath " +
+            "RETURNING reportid";
+
+    // Rows written per executeBatch during re-validation
+    private static final int BATCH_SIZE = 500;
+
+    // =========================================================
+    // SAVE ROWS OF ONE REPORT (one batch, one transaction)
+    // =========================================================
+    public boolean saveRows(int reportId,
+            int labId,
+            ResultBatch results) {
+
+        if (results.isEmpty()) {
+            return true;
+        }
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("saveExtractedRows");
+
+        try (Connection conn = getConnection()) {
+
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement ps = conn.prepareStatement(UPSERT_ROW_SQL)) {
+
+                for (int i = 0; i < results.size(); i++) {
+                    ps.setInt(1, reportId);
+                    ps.setInt(2, labId);
+                    ps.setString(3, results.parameter(i));
+                    ps.setString(4, results.valueText(i));
+                    ps.setString(5, results.unit(i));
+                    ps.setString(6, results.referenceRange(i));
+                    ps.setString(7, results.pdfMethod(i));
+                    ps.setString(8, results.methodText(i));
+                    ps.setInt(9, results.page(i));
+                    ps.setString(10, results.dbMethod(i));
+                    ps.setString(11, results.status(i).label());
+                    ps.addBatch();
+                }
+
+                ps.executeBatch();
+                conn.commit();
+                timer.rows(results.size());
+                return true;
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Extracted row save error: " + e.getMessage());
+            return false;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    // =========================================================
+    // REPORT ID OF A FILE
+    // For reports validated outside poc.reportqueue (BulkRunner,
+    // EngineRunner): the same negative id every time the file is
+    // validated, so a re-run overwrites its rows. 0 on error.
+    // =========================================================
+    public int reportIdFor(String filepath) {
+
+        String path = Paths.get(filepath).toAbsolutePath().normalize().toString();
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("extractedSourceId");
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(SOURCE_ID_SQL)) {
+
+            ps.setString(1, path);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Extracted source id error: " + e.getMessage());
+            return 0;
+        } finally {
+            timer.stop();
+        }
+    }
+
+    // =========================================================
+    // CHANGED PARAMETERS
+    // Parameters of a lab with a row whose stored DB method
+    // differs from the current one, or whose method text now
+    // matches a different catalogue method (null-safe). Rows
+    // stored without method text only compare the DB method.
+    // Parameters no longer in the catalogue are not re-validated;
+    // they are added to removed instead.
+    // =========================================================
+    public List<String> findChangedParameters(LabValidator lab, List<String> removed) {
+
+        String query = "SELECT DISTINCT parametername, dbmethod, pdfmethod, methodtext " +
+                "FROM poc.extractedrow WHERE labid = ?";
+
+        List<String> changed = new ArrayList<>();
+        RowScanner scanner = new RowScanner();
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("findChangedParameters");
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setInt(1, lab.getLabId());
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+
+                    String parameter = rs.getString("parametername");
+                    int param = lab.parameterIndex(parameter);
+
+                    if (param < 0) {
+                        if (!removed.contains(parameter)) {
+                            removed.add(parameter);
+                        }
+                        continue;
+                    }
+
+                    if (changed.contains(parameter)) {
+                        continue;
+                    }
+
+                    String methodText = rs.getString("methodtext");
+
+                    boolean dbChanged = !Objects.equals(rs.getString("dbmethod"), lab.dbMethod(param));
+                    boolean pdfChanged = methodText != null
+                            && !Objects.equals(rs.getString("pdfmethod"),
+                                    pdfMethod(scanner, lab, methodText));
+
+                    if (dbChanged || pdfChanged) {
+                        changed.add(parameter);
+                    }
+                }
+            }
+
+        } catch (SQLException e) {
+            System.err.println("DB Error: " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+
+        return changed;
+    }
+
+    // Catalogue method the current method automaton finds in a
+    // stored method text, in the form saveRows stores it
+    private static String pdfMethod(RowScanner scanner, LabValidator lab, String methodText) {
+        return lab.method(lab.methodIndex(scanner.matchMethod(methodText, lab.getMethodTrie())));
+    }
+
+    // =========================================================
+    // RE-VALIDATE
+    // For every row of the given (catalogue) parameters, finds the
+    // PDF method again in the stored method text with the current
+    // method automaton (rows without method text keep their
+    // stored PDF method), re-runs MethodValidationEngine
+    // .decideStatus against the current DB method, and stores the
+    // new methods and status.
+    // Returns the number of rows per "OLD -> NEW" status change
+    // (unchanged rows are counted as "OLD -> OLD").
+    // =========================================================
+    public Map<String, Integer> revalidate(LabValidator lab, List<String> parameters) {
+
+        Map<String, Integer> transitions = new LinkedHashMap<>();
+
+        if (parameters.isEmpty()) {
+            return transitions;
+        }
+
+        RowScanner scanner = new RowScanner();
+
+        String query = "SELECT reportid, parametername, pdfmethod, methodtext, status " +
+                "FROM poc.extractedrow " +
+                "WHERE labid = ? AND parametername = ANY(?)";
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("revalidateExtractedRows");
+        int rows = 0;
+
+        try (Connection conn = getConnection()) {
+
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement select = conn.prepareStatement(query);
+                    PreparedStatement update = conn.prepareStatement(UPDATE_STATUS_SQL)) {
+
+                Array names = conn.createArrayOf("text", parameters.toArray());
+                select.setInt(1, lab.getLabId());
+                select.setArray(2, names);
+
+                // stream the rows instead of loading the whole lab
+                select.setFetchSize(BATCH_SIZE);
+
+                try (ResultSet rs = select.executeQuery()) {
+
+                    while (rs.next()) {
+
+                        String parameter = rs.getString("parametername");
+                        int param = lab.parameterIndex(parameter);
+
+                        if (param < 0) {
+                            continue;
+                        }
+
+                        String dbMethod = lab.dbMethod(param);
+                        String methodText = rs.getString("methodtext");
+                        String pdfMethod = methodText != null
+                                ? pdfMethod(scanner, lab, methodText)
+                                : rs.getString("pdfmethod");
+
+                        String oldStatus = rs.getString("status");
+                        String newStatus = MethodValidationEngine.decideStatus(
+                                pdfMethod, dbMethod).label();
+
+                        transitions.merge(oldStatus + " -> " + newStatus, 1, Integer::sum);
+
+                        update.setString(1, pdfMethod);
+                        update.setString(2, dbMethod);
+                        update.setString(3, newStatus);
+                        update.setInt(4, rs.getInt("reportid"));
+                        update.setString(5, parameter);
+                        update.addBatch();
+
+                        if (++rows % BATCH_SIZE == 0) {
+                            update.executeBatch();
+                        }
+                    }
+                }
+
+                update.executeBatch();
+                conn.commit();
+                timer.rows(rows);
+
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Re-validation error: " + e.getMessage());
+            transitions.clear();
+        } finally {
+            timer.stop();
+        }
+
+        return transitions;
+    }
+}
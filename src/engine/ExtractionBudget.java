@@ -0,0 +1,259 @@
+package engine;
+
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// =========================================================
+// EXTRACTION MEMORY BUDGET
+// Admission control for PDFBox: every extraction reserves an
+// estimate of the heap its document will take (file size times
+// FILE_FACTOR, plus PAGE_BYTES per page once the page count is
+// known) and waits while the reservations of the extractions
+// already running would exceed the capacity. Many small PDFs
+// run at full parallelism; a few large scans arriving together
+// take turns instead of exhausting the heap.
+//
+// A document larger than the whole capacity is admitted alone.
+// Page costs and extra copies (parallel extraction) are added
+// after loading without waiting, so the budget may be overdrawn
+// briefly; new documents then wait until it recovers.
+//
+// Documents of at least largeDocumentBytes also use temp files
+// instead of heap for PDFBox's scratch buffers. Bytes held for
+// later use (prefetched PDFs) take tryReserve: they count
+// against the capacity but are not a running extraction, so they
+// never hold back a document that runs alone.
+// Shared by all extractions in the JVM (see getDefault).
+// =========================================================
+public class ExtractionBudget {
+
+    // Heap per byte of PDF while it is parsed: the bytes
+    // themselves plus the parsed object tree
+    public static final int FILE_FACTOR = 3;
+
+    // Per page: page tree, resources and text positions
+    public static final long PAGE_BYTES = 256L * 1024;
+
+    public static final long DEFAULT_LARGE_DOCUMENT_BYTES = 16L * 1024 * 1024;
+
+    private static final ExtractionBudget DEFAULT = new ExtractionBudget(
+            Runtime.getRuntime().maxMemory() / 2,
+            DEFAULT_LARGE_DOCUMENT_BYTES);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+
+    private volatile long capacityBytes;
+    private volatile long largeDocumentBytes;
+
+    // guarded by lock
+    private long usedBytes;
+    private int running;
+    private int waiting;
+
+    public ExtractionBudget(long capacityBytes, long largeDocumentBytes) {
+        this.capacityBytes = capacityBytes;
+        this.largeDocumentBytes = largeDocumentBytes;
+    }
+
+    public static ExtractionBudget getDefault() {
+        return DEFAULT;
+    }
+
+    public void setCapacityBytes(long capacityBytes) {
+        lock.lock();
+        try {
+            this.capacityBytes = capacityBytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setLargeDocumentBytes(long largeDocumentBytes) {
+        this.largeDocumentBytes = largeDocumentBytes;
+    }
+
+    public long getCapacityBytes() {
+        return capacityBytes;
+    }
+
+    // =========================================================
+    // ADMIT
+    // Blocks until the document fits. Close the permit (try-with-
+    // resources) when the document is closed.
+    // =========================================================
+    public Permit admit(long fileBytes) throws InterruptedException {
+
+        long cost = Math.min(fileBytes * FILE_FACTOR, capacityBytes);
+        boolean large = isLarge(fileBytes);
+
+        long t = System.nanoTime();
+
+        lock.lock();
+        try {
+            waiting++;
+            try {
+                while (running > 0 && usedBytes + cost > capacityBytes) {
+                    released.await();
+                }
+            } finally {
+                waiting--;
+            }
+
+            usedBytes += cost;
+            running++;
+
+        } finally {
+            lock.unlock();
+        }
+
+        EngineMetrics.record("extract_admission", t);
+        if (large) {
+            EngineMetrics.count("extractions_temp_file_total");
+        }
+
+        return new Permit(cost, large);
+    }
+
+    // =========================================================
+    // RESERVE
+    // Heap held outside any extraction (e.g. PDF bytes read
+    // ahead). Never waits: false if the bytes do not fit now.
+    // Give them back with unreserve.
+    // =========================================================
+    public boolean tryReserve(long bytes) {
+
+        lock.lock();
+        try {
+            if (usedBytes + bytes > capacityBytes) {
+                return false;
+            }
+            usedBytes += bytes;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void unreserve(long bytes) {
+        lock.lock();
+        try {
+            usedBytes -= bytes;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Large documents are loaded from their file, not from a
+    // byte[], and get temp-file scratch buffers
+    public boolean isLarge(long fileBytes) {
+        return fileBytes >= largeDocumentBytes;
+    }
+
+    // Estimated heap for one loaded copy of a document
+    public static long documentBytes(long fileBytes, int pages) {
+        return fileBytes * FILE_FACTOR + pages * PAGE_BYTES;
+    }
+
+    // Heap the running extractions (and reservations) are
+    // estimated to use
+    public long usedBytes() {
+        lock.lock();
+        try {
+            return usedBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Budget in use, capacity and queue, refreshed on each scrape
+    public void registerGauges() {
+        EngineMetrics.addCollector(() -> {
+            lock.lock();
+            try {
+                EngineMetrics.setGauge("extract_budget_used_bytes", usedBytes);
+                EngineMetrics.setGauge("extract_budget_capacity_bytes", capacityBytes);
+                EngineMetrics.setGauge("extractions_running", running);
+                EngineMetrics.setGauge("extractions_waiting", waiting);
+            } finally {
+                lock.unlock();
+            }
+        });
+    }
+
+    private void release(long bytes) {
+        lock.lock();
+        try {
+            usedBytes -= bytes;
+            running--;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void overdraw(long bytes) {
+        lock.lock();
+        try {
+            usedBytes += bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // =========================================================
+    // PERMIT
+    // One per loaded document (or set of copies of it); used by
+    // the thread that admitted it.
+    // =========================================================
+    public final class Permit implements AutoCloseable {
+
+        private final boolean large;
+        private long heldBytes;
+        private boolean closed;
+
+        private Permit(long heldBytes, boolean large) {
+            this.heldBytes = heldBytes;
+            this.large = large;
+        }
+
+        // Scratch memory for PDFBox: temp files for large documents
+        public RandomAccessStreamCache.StreamCacheCreateFunction streamCache() {
+            return large
+                    ? MemoryUsageSetting.setupTempFileOnly().streamCache
+                    : IOUtils.createMemoryOnlyStreamCache();
+        }
+
+        public boolean isLarge() {
+            return large;
+        }
+
+        // Once the page count is known
+        public void addPages(int pages) {
+            reserve(pages * PAGE_BYTES);
+        }
+
+        // More memory for this document (e.g. extra copies loaded
+        // for parallel extraction); never waits
+        public void reserve(long bytes) {
+            if (bytes > 0 && !closed) {
+                heldBytes += bytes;
+                overdraw(bytes);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                release(heldBytes);
+            }
+        }
+    }
+}
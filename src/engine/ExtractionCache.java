@@ -0,0 +1,252 @@
+package engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+// =========================================================
+// CONTENT-ADDRESSED EXTRACTION CACHE
+// Extracted text is stored as <sha256 of PDF bytes>.txt, so a
+// retry or a duplicate upload of the same PDF is a file read
+// instead of a PDFBox parse. Least recently used entries are
+// evicted once the directory grows past maxBytes.
+// =========================================================
+public class ExtractionCache {
+
+    public static final Path DEFAULT_DIR = Paths.get("cache", "extracted");
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    private static final ExtractionCache DEFAULT =
+            new ExtractionCache(DEFAULT_DIR, DEFAULT_MAX_BYTES);
+
+    private final Path dir;
+    private final long maxBytes;
+
+    private final AtomicLong sizeBytes = new AtomicLong(-1);
+    private final ReentrantLock evictLock = new ReentrantLock();
+
+    public ExtractionCache(Path dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+    }
+
+    public static ExtractionCache getDefault() {
+        return DEFAULT;
+    }
+
+    // =========================================================
+    // KEY
+    // =========================================================
+    public static String keyOf(byte[] pdfBytes) {
+        return toHex(sha256().digest(pdfBytes));
+    }
+
+    // Streams the file through the digest without loading it
+    public static String keyOf(Path pdfPath) throws IOException {
+
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream in = Files.newInputStream(pdfPath)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+
+        StringBuilder sb = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    public Path pathOf(String key) {
+        return dir.resolve(key + ".txt");
+    }
+
+    // =========================================================
+    // GET (null on miss). A hit refreshes the entry's LRU time.
+    // =========================================================
+    public String get(String key) {
+
+        Path file = pathOf(key);
+
+        try {
+            String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return text;
+
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Extraction cache read error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // =========================================================
+    // PUT
+    // Written to a temp file and moved into place, so readers
+    // never see a half-written entry.
+    // =========================================================
+    public void put(String key, String text) {
+
+        try {
+            Files.createDirectories(dir);
+
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            Path target = pathOf(key);
+
+            if (Files.exists(target)) {
+                return;
+            }
+
+            long sizeBefore = currentSize();
+
+            Path tmp = Files.createTempFile(dir, key, ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, target,
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            if (sizeBefore + bytes.length > maxBytes) {
+                evict();
+            } else {
+                sizeBytes.addAndGet(bytes.length);
+            }
+
+        } catch (IOException e) {
+            System.err.println("Extraction cache write error: " + e.getMessage());
+        }
+    }
+
+    public void invalidate(String key) {
+        try {
+            Files.deleteIfExists(pathOf(key));
+            sizeBytes.set(-1);
+        } catch (IOException e) {
+            System.err.println("Extraction cache delete error: " + e.getMessage());
+        }
+    }
+
+    private long currentSize() {
+        long size = sizeBytes.get();
+        return size >= 0 ? size : sizeBytes.updateAndGet(s -> s >= 0 ? s : scanSize());
+    }
+
+    private long scanSize() {
+
+        long total = 0;
+        for (Entry e : listEntries()) {
+            total += e.size;
+        }
+        return total;
+    }
+
+    // =========================================================
+    // EVICTION (oldest last-access first, down to 90% of max)
+    // =========================================================
+    private void evict() {
+
+        if (!evictLock.tryLock()) {
+            return; // another thread is already evicting
+        }
+
+        try {
+            List<Entry> entries = listEntries();
+            entries.sort(Comparator.comparingLong(e -> e.lastAccess));
+
+            long total = 0;
+            for (Entry e : entries) {
+                total += e.size;
+            }
+
+            long target = maxBytes / 10 * 9;
+
+            for (Entry e : entries) {
+                if (total <= target) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(e.path);
+                    total -= e.size;
+                } catch (IOException ex) {
+                    System.err.println("Extraction cache evict error: " + ex.getMessage());
+                }
+            }
+
+            sizeBytes.set(total);
+
+        } finally {
+            evictLock.unlock();
+        }
+    }
+
+    private List<Entry> listEntries() {
+
+        List<Entry> entries = new ArrayList<>();
+
+        if (!Files.isDirectory(dir)) {
+            return entries;
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(".txt"))
+                    .forEach(p -> {
+                        try {
+                            entries.add(new Entry(p,
+                                    Files.size(p),
+                                    Files.getLastModifiedTime(p).toMillis()));
+                        } catch (IOException ignored) {
+                            // removed concurrently
+                        }
+                    });
+        } catch (IOException e) {
+            System.err.println("Extraction cache list error: " + e.getMessage());
+        }
+
+        return entries;
+    }
+
+    private static final class Entry {
+
+        final Path path;
+        final long size;
+        final long lastAccess;
+
+        Entry(Path path, long size, long lastAccess) {
+            this.path = path;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
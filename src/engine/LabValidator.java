@@ -0,0 +1,204 @@
+package engine;
+
+import org.ahocorasick.trie.Trie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// =========================================================
+// COMPILED PER-LAB VALIDATOR
+// Immutable snapshot of a lab's parameter catalogue with the
+// Aho-Corasick tries (parameters and methods) already built.
+// Parameters and methods are also numbered (catalogue index),
+// so results can refer to them by int instead of by String.
+// Safe to share across threads.
+// =========================================================
+public class LabValidator {
+
+    private final int labId;
+    private final Map<String, String> paramMap;
+    private final Set<String> knownMethods;
+    private final Trie trie;
+    private final Trie methodTrie;
+    private final long loadedAtMillis;
+
+    // Catalogue index: parameter i has DB method dbMethods[i]
+    private final String[] parameters;
+    private final String[] dbMethods;
+    private final Map<String, Integer> parameterIndex;
+    // RowScanner.letters(name) -> index, for names read from cells
+    private final Map<String, Integer> printedIndex;
+
+    private final String[] methods;
+    private final Map<String, Integer> methodIndex;
+
+    private final ReferenceRanges ranges;
+
+    private LabValidator(int labId,
+            Map<String, String> paramMap,
+            Set<String> knownMethods,
+            Trie trie,
+            Trie methodTrie,
+            List<ReferenceRanges.Range> rangeRows) {
+
+        this.labId = labId;
+        this.paramMap = paramMap;
+        this.knownMethods = knownMethods;
+        this.trie = trie;
+        this.methodTrie = methodTrie;
+        this.loadedAtMillis = System.currentTimeMillis();
+
+        this.parameters = paramMap.keySet().toArray(new String[0]);
+        Arrays.sort(this.parameters);
+        this.dbMethods = new String[parameters.length];
+        this.parameterIndex = new HashMap<>();
+        this.printedIndex = new HashMap<>();
+
+        for (int i = 0; i < parameters.length; i++) {
+            dbMethods[i] = paramMap.get(parameters[i]);
+            parameterIndex.put(parameters[i], i);
+            printedIndex.putIfAbsent(RowScanner.letters(parameters[i]), i);
+        }
+
+        List<String> named = new ArrayList<>();
+        for (String method : knownMethods) {
+            if (method != null && !method.trim().isEmpty()) {
+                named.add(method);
+            }
+        }
+        Collections.sort(named);
+
+        this.methods = named.toArray(new String[0]);
+        this.methodIndex = new HashMap<>();
+
+        for (int i = 0; i < methods.length; i++) {
+            methodIndex.put(methods[i], i);
+        }
+
+        // needs parameterIndex above
+        this.ranges = ReferenceRanges.index(this, rangeRows);
+    }
+
+    public static LabValidator compile(int labId, Map<String, String> paramMap) {
+        return compile(labId, paramMap, List.of());
+    }
+
+    // With the lab's reference ranges (see ReferenceRanges)
+    public static LabValidator compile(int labId,
+            Map<String, String> paramMap,
+            List<ReferenceRanges.Range> rangeRows) {
+
+        Map<String, String> params =
+                Collections.unmodifiableMap(new HashMap<>(paramMap));
+
+        Set<String> methods =
+                Collections.unmodifiableSet(new HashSet<>(params.values()));
+
+        Trie.TrieBuilder builder = Trie.builder()
+                .ignoreCase()
+                .onlyWholeWords();
+
+        for (String param : params.keySet()) {
+            builder.addKeyword(param);
+        }
+
+        // Methods are matched anywhere in the row (case-insensitive
+        // substring), so no whole-word restriction here.
+        Trie.TrieBuilder methodBuilder = Trie.builder()
+                .ignoreCase();
+
+        for (String method : methods) {
+            if (method != null && !method.trim().isEmpty()) {
+                methodBuilder.addKeyword(method);
+            }
+        }
+
+        return new LabValidator(labId, params, methods,
+                builder.build(), methodBuilder.build(), rangeRows);
+    }
+
+    public int getLabId() {
+        return labId;
+    }
+
+    public Map<String, String> getParamMap() {
+        return paramMap;
+    }
+
+    public Set<String> getKnownMethods() {
+        return knownMethods;
+    }
+
+    public Trie getTrie() {
+        return trie;
+    }
+
+    public Trie getMethodTrie() {
+        return methodTrie;
+    }
+
+    public ReferenceRanges getRanges() {
+        return ranges;
+    }
+
+    public long getLoadedAtMillis() {
+        return loadedAtMillis;
+    }
+
+    // =========================================================
+    // CATALOGUE INDEX
+    // =========================================================
+
+    // Index of a parameter name as returned by the trie, -1 if unknown
+    public int parameterIndex(String parameter) {
+        Integer i = parameterIndex.get(parameter);
+        return i == null ? -1 : i;
+    }
+
+    // Index of a name as printed in a table cell, ignoring case,
+    // spaces and punctuation; -1 if unknown
+    public int findParameter(CharSequence printedName) {
+
+        if (printedName == null) {
+            return -1;
+        }
+
+        Integer i = printedIndex.get(RowScanner.letters(printedName));
+        return i == null ? -1 : i;
+    }
+
+    public String parameter(int index) {
+        return parameters[index];
+    }
+
+    public String dbMethod(int parameterIndex) {
+        return dbMethods[parameterIndex];
+    }
+
+    // Index of a method as returned by the method trie, -1 if unknown
+    public int methodIndex(String method) {
+        if (method == null) {
+            return -1;
+        }
+        Integer i = methodIndex.get(method);
+        return i == null ? -1 : i;
+    }
+
+    public String method(int index) {
+        return index < 0 ? null : methods[index];
+    }
+
+    public int size() {
+        return paramMap.size();
+    }
+
+    public boolean isEmpty() {
+        return paramMap.isEmpty();
+    }
+}
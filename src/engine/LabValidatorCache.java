@@ -0,0 +1,73 @@
+package engine;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// =========================================================
+// PER-LAB VALIDATOR CACHE
+// Loads a lab's parameters and reference ranges once, compiles
+// the trie once and reuses it across reports and worker threads
+// until the TTL expires or the lab is invalidated explicitly.
+// =========================================================
+public class LabValidatorCache {
+
+    public static final long DEFAULT_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final DatabaseManager db;
+    private final long ttlMs;
+
+    private final Map<Integer, LabValidator> cache = new ConcurrentHashMap<>();
+
+    public LabValidatorCache(DatabaseManager db) {
+        this(db, DEFAULT_TTL_MS);
+    }
+
+    public LabValidatorCache(DatabaseManager db, long ttlMs) {
+        this.db = db;
+        this.ttlMs = ttlMs;
+    }
+
+    // =========================================================
+    // GET (load on miss / expiry)
+    // The DB load runs outside any lock; two threads missing at
+    // the same time may both load, which is harmless.
+    // =========================================================
+    public LabValidator get(int labId) {
+
+        LabValidator cached = cache.get(labId);
+
+        if (cached != null && !isExpired(cached)) {
+            return cached;
+        }
+
+        LabValidator fresh = LabValidator.compile(
+                labId,
+                db.loadParametersWithMethod(labId),
+                db.loadReferenceRanges(labId));
+
+        // An empty catalogue usually means the DB call failed,
+        // so do not pin it in the cache for a whole TTL.
+        if (!fresh.isEmpty()) {
+            cache.put(labId, fresh);
+        }
+
+        return fresh;
+    }
+
+    // =========================================================
+    // INVALIDATION
+    // Call after a lab's testparameter rows have been changed.
+    // =========================================================
+    public void invalidate(int labId) {
+        cache.remove(labId);
+    }
+
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private boolean isExpired(LabValidator validator) {
+        return System.currentTimeMillis() - validator.getLoadedAtMillis() > ttlMs;
+    }
+}
@@ -0,0 +1,110 @@
+package engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// =========================================================
+// LOCK-FREE LATENCY HISTOGRAM
+// Power-of-two buckets in microseconds (1us .. ~68min).
+// Cheap enough to record on every call from any thread.
+// =========================================================
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalMicros = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        recordMicros(nanos / 1_000);
+    }
+
+    public void recordMillis(long millis) {
+        recordMicros(millis * 1_000);
+    }
+
+    public void recordMicros(long micros) {
+
+        if (micros < 0)
+            micros = 0;
+
+        counts.incrementAndGet(bucketOf(micros));
+        totalMicros.add(micros);
+        maxMicros.accumulateAndGet(micros, Math::max);
+    }
+
+    // Bucket i holds values in [2^(i-1), 2^i) microseconds
+    private static int bucketOf(long micros) {
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    public long getCount() {
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            n += counts.get(i);
+        }
+        return n;
+    }
+
+    public double getMeanMillis() {
+        long n = getCount();
+        return n == 0 ? 0 : totalMicros.sum() / 1000.0 / n;
+    }
+
+    public double getMaxMillis() {
+        return maxMicros.get() / 1000.0;
+    }
+
+    public double getTotalMillis() {
+        return totalMicros.sum() / 1000.0;
+    }
+
+    // Upper bound of the bucket containing the given quantile
+    public double getPercentileMillis(double quantile) {
+
+        long n = getCount();
+        if (n == 0)
+            return 0;
+
+        long rank = (long) Math.ceil(quantile * n);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(1L << i, Math.max(1, maxMicros.get())) / 1000.0;
+            }
+        }
+
+        return getMaxMillis();
+    }
+
+    // Cumulative count of samples <= 2^i microseconds (for exporters)
+    public long[] cumulativeCounts() {
+        long[] result = new long[BUCKETS];
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            result[i] = seen;
+        }
+        return result;
+    }
+
+    public static double bucketUpperBoundMillis(int bucket) {
+        return (1L << bucket) / 1000.0;
+    }
+
+    public String summary() {
+        return String.format(
+                "count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                getCount(),
+                getMeanMillis(),
+                getPercentileMillis(0.50),
+                getPercentileMillis(0.95),
+                getPercentileMillis(0.99),
+                getMaxMillis());
+    }
+}
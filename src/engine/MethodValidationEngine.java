@@ -1,13 +1,10 @@
 package engine;
 
 import org.ahocorasick.trie.Emit;
-import org.ahocorasick.trie.Trie;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MethodValidationEngine {
 
@@ -21,6 +18,17 @@ public class MethodValidationEngine {
         public String dbMethod;
         public String status;
 
+        // Structured row fields (null when not printed in the PDF)
+        public String unit;
+        public String referenceRange;
+
+        // PDF page the row was found on (0 = whole document scanned at once)
+        public int page;
+
+        // -1 low / 0 normal / 1 high, null without a DB reference range
+        public Integer abnormality;
+        public boolean rangeMismatch;
+
         public ValidationResult(String parameter,
                 String value,
                 String pdfMethod,
@@ -51,136 +59,307 @@ public class MethodValidationEngine {
     }
 
     // =========================================================
-    // EXTRACT NUMERIC VALUE
+    // MAIN VALIDATION LOGIC (UPDATED)
     // =========================================================
-    private String extractValue(String line) {
-        Matcher m = Pattern.compile("([-+]?[0-9]*\\.?[0-9]+)").matcher(line);
-        if (m.find())
-            return m.group(1);
-        return null;
+    public List<ValidationResult> validate(String text,
+            Map<String, String> paramMap) {
+
+        return validate(text, LabValidator.compile(0, paramMap));
     }
 
     // =========================================================
-    // NORMALIZATION (Safe Comparison)
-    // Removes symbols, spaces, case differences
+    // VALIDATION WITH A PRECOMPILED LAB (see LabValidatorCache)
     // =========================================================
-    private String normalize(String s) {
-        if (s == null)
-            return "";
-        return s.replaceAll("[^a-zA-Z]", "").toLowerCase();
+    public List<ValidationResult> validate(String text,
+            LabValidator lab) {
+
+        return validateBatch(text, lab).toResults();
+    }
+
+    // Compact form: one ResultBatch, no object per result row
+    public ResultBatch validateBatch(String text,
+            LabValidator lab) {
+
+        Session session = newSession(lab);
+        session.scan(text);
+
+        EngineMetrics.count("repeated_chars_skipped_total", null, null,
+                session.getCharsSkipped());
+
+        return session.getBatch();
+    }
+
+    // Layout-aware form: rows already split into cells by
+    // TableTextStripper (see PDFExtractorEngine.extractTable)
+    public ResultBatch validateTable(PDFExtractorEngine.TableExtraction table,
+            LabValidator lab) {
+
+        Session session = newSession(lab);
+        session.scanTable(table.text, table.rows, table.otherText);
+        return session.getBatch();
     }
 
     // =========================================================
-    // EXTRACT METHOD FROM LINE (DB-Driven)
+    // METHOD DECISION
+    // Compares the method printed in the PDF with the one in
+    // poc.testparameter. Used by every scan and by re-validation
+    // of stored rows (see ExtractedRowStore).
     // =========================================================
-    private String extractMethod(String line, Set<String> knownMethods) {
+    public static ResultStatus decideStatus(String pdfMethod, String dbMethod) {
 
-        String lowerLine = line.toLowerCase();
+        boolean dbEmpty = (dbMethod == null || dbMethod.isBlank());
+        boolean pdfEmpty = (pdfMethod == null || pdfMethod.isBlank());
 
-        for (String method : knownMethods) {
-            if (method == null || method.trim().isEmpty())
-                continue;
+        // CASE 1: Both NULL → VALID (No method defined anywhere)
+        if (dbEmpty && pdfEmpty) {
+            return ResultStatus.MATCH_NO_METHOD;
+        }
 
-            if (lowerLine.contains(method.toLowerCase())) {
-                return method;
-            }
+        // CASE 2: DB missing but PDF has method
+        if (dbEmpty) {
+            return ResultStatus.DB_METHOD_MISSING;
+        }
+
+        // CASE 3: PDF missing but DB has method
+        if (pdfEmpty) {
+            return ResultStatus.PDF_METHOD_NOT_FOUND;
+        }
+
+        // CASE 4: Both exist → Compare
+        if (RowScanner.sameLetters(pdfMethod, dbMethod)) {
+            return ResultStatus.MATCH;
         }
 
-        return null;
+        // CASE 5: Both exist but different
+        return ResultStatus.MISMATCH;
     }
 
     // =========================================================
-    // MAIN VALIDATION LOGIC (UPDATED)
+    // INCREMENTAL VALIDATION
+    // Feed text in chunks (e.g. one PDF page at a time); a
+    // parameter is reported once, on its first row with a value.
+    // Not thread-safe: one session per report.
     // =========================================================
-    public List<ValidationResult> validate(String text,
-            Map<String, String> paramMap) {
+    public Session newSession(LabValidator lab) {
+        return new Session(lab);
+    }
 
-        Set<String> knownMethods = new HashSet<>(paramMap.values());
+    public class Session {
 
-        Trie.TrieBuilder builder = Trie.builder()
-                .ignoreCase()
-                .onlyWholeWords();
+        private final LabValidator lab;
 
-        for (String param : paramMap.keySet()) {
-            builder.addKeyword(param);
+        // Parameters already reported, by catalogue index
+        private final boolean[] processed;
+        private final ResultBatch batch;
+        private final RowScanner row = new RowScanner();
+        private final RepeatedLineFilter repeated = new RepeatedLineFilter();
+
+        private int page = 0;
+
+        // Reference range per catalogue parameter for this patient;
+        // picked from the header on the first scan unless set
+        private ReferenceRanges.Range[] ranges;
+
+        private Session(LabValidator lab) {
+            this.lab = lab;
+            this.processed = new boolean[lab.size()];
+            this.batch = new ResultBatch(lab);
         }
 
-        Trie trie = builder.build();
-        Collection<Emit> emits = trie.parseText(text);
+        // Demographics used to pick reference ranges
+        public void setHeader(ReportHeader header) {
+            this.ranges = lab.getRanges().select(header);
+        }
 
-        Set<String> processed = new HashSet<>();
-        List<ValidationResult> results = new ArrayList<>();
+        public ResultBatch getBatch() {
+            return batch;
+        }
 
-        for (Emit emit : emits) {
+        // Legacy List form (allocates one object per result)
+        public List<ValidationResult> getResults() {
+            return batch.toResults();
+        }
 
-            String paramName = emit.getKeyword();
+        // Page number recorded on results of the following scans
+        public void setPage(int page) {
+            this.page = page;
+        }
 
-            if (processed.contains(paramName))
-                continue;
+        // Characters of repeated header / footer lines not scanned
+        public long getCharsSkipped() {
+            return repeated.getCharsRemoved();
+        }
 
-            int lineStart = text.lastIndexOf("\n", emit.getStart());
-            int lineEnd = text.indexOf("\n", emit.getEnd());
+        // Returns the number of new results found in this chunk
+        public int scan(String pageText) {
 
-            if (lineStart == -1)
-                lineStart = 0;
-            if (lineEnd == -1)
-                lineEnd = text.length();
+            ReportEvents.ValidationEvent event = new ReportEvents.ValidationEvent();
+            event.begin();
 
-            String line = text.substring(lineStart, lineEnd).trim();
+            // drop blocks already seen on an earlier page
+            String text = repeated.filter(pageText);
 
-            String value = extractValue(line);
+            int before = batch.size();
 
-            // Skip title/header rows (no numeric value)
-            if (value == null)
-                continue;
+            if (ranges == null) {
+                setHeader(lab.getRanges().isEmpty()
+                        ? ReportHeader.UNKNOWN
+                        : ReportHeader.parse(text));
+            }
+
+            scanText(text);
+
+            int found = batch.size() - before;
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.reportId = ReportContext.reportId();
+                event.labId = lab.getLabId();
+                event.textLength = text.length();
+                event.parameterCount = lab.size();
+                event.resultCount = found;
+                event.commit();
+            }
+
+            return found;
+        }
+
+        // Parameters of the catalogue found in text, each read by
+        // the row scanner on its line. Parameters already reported
+        // are left out. No filtering, events or header parsing:
+        // callers do that once per page.
+        private void scanText(String text) {
+
+            Collection<Emit> emits = lab.getTrie().parseText(text);
 
-            processed.add(paramName);
+            for (Emit emit : emits) {
 
-            String pdfMethod = extractMethod(line, knownMethods);
-            String dbMethod = paramMap.get(paramName);
+                int param = lab.parameterIndex(emit.getKeyword());
 
-            boolean dbEmpty = (dbMethod == null || dbMethod.trim().isEmpty());
-            boolean pdfEmpty = (pdfMethod == null || pdfMethod.trim().isEmpty());
+                if (param < 0 || processed[param])
+                    continue;
 
-            String status;
+                boolean hasValue = row.scan(text, emit.getStart(), emit.getEnd() + 1,
+                        lab.getMethodTrie());
 
-            // =====================================================
-            // 🔥 UPDATED DECISION LOGIC
-            // =====================================================
+                // Skip title/header rows (no numeric value)
+                if (!hasValue)
+                    continue;
 
-            // CASE 1: Both NULL → VALID (No method defined anywhere)
-            if (dbEmpty && pdfEmpty) {
-                status = "MATCH (NO METHOD)";
+                record(param, row.unitText(), row.tailText());
             }
+        }
 
-            // CASE 2: DB missing but PDF has method
-            else if (dbEmpty) {
-                status = "DB METHOD MISSING";
+        // =========================================================
+        // TABLE ROWS (layout-aware extraction)
+        // Each row's name is looked up in the catalogue directly;
+        // a wrapped name is tried joined with the line below, then
+        // with the title above. A row whose name is still unknown
+        // goes through the text scan on its own line.
+        //
+        // Lines whose value missed the learned Result column (a
+        // shifted or long value, a template from another report)
+        // are not rows, so afterwards the lines that are not rows
+        // (otherText) are scanned as the text path would, for the
+        // parameters still missing. Row lines are not read again
+        // (a "Nil" row or a shorter catalogue name on a row), so
+        // the extra scan costs only the non-row lines. The whole
+        // text is scanned directly when no layout was recognised.
+        // =========================================================
+        public int scanTable(String text, List<TableRow> rows, String otherText) {
+
+            if (rows.isEmpty()) {
+                return scan(text);
             }
 
-            // CASE 3: PDF missing but DB has method
-            else if (pdfEmpty) {
-                status = "PDF METHOD NOT FOUND";
+            int before = batch.size();
+
+            if (ranges == null) {
+                setHeader(lab.getRanges().isEmpty()
+                        ? ReportHeader.UNKNOWN
+                        : ReportHeader.parse(text));
             }
 
-            // CASE 4: Both exist → Compare
-            else if (normalize(pdfMethod).equals(normalize(dbMethod))) {
-                status = "MATCH";
+            for (TableRow cells : rows) {
+
+                setPage(cells.page);
+
+                int param = findParameter(cells);
+
+                if (param < 0) {
+                    scanText(cells.line);
+                    continue;
+                }
+
+                if (processed[param])
+                    continue;
+
+                // Skip rows without a numeric result ("Negative", "Nil")
+                if (!row.scanCells(cells.value, cells.method, cells.range, lab.getMethodTrie()))
+                    continue;
+
+                record(param, cells.unit, cells.method);
             }
 
-            // CASE 5: Both exist but different
-            else {
-                status = "MISMATCH";
+            // page unknown, as on the text path
+            setPage(0);
+            scanText(repeated.filter(otherText));
+
+            return batch.size() - before;
+        }
+
+        private int findParameter(TableRow cells) {
+
+            int param = -1;
+
+            if (cells.name != null && cells.nameContinuation != null) {
+                param = lab.findParameter(cells.name + " " + cells.nameContinuation);
+            }
+            if (param < 0) {
+                param = lab.findParameter(cells.name);
+            }
+            if (param < 0 && cells.heading != null) {
+                param = lab.findParameter(cells.name == null
+                        ? cells.heading
+                        : cells.heading + " " + cells.name);
             }
 
-            results.add(new ValidationResult(
-                    paramName,
-                    value,
-                    pdfMethod,
-                    dbMethod,
-                    status));
+            return param;
         }
 
-        return results;
+        // Adds the row the scanner is positioned on as the result
+        // of catalogue parameter param; methodText is where the
+        // method was looked for
+        private void record(int param, String unit, String methodText) {
+
+            processed[param] = true;
+
+            ResultStatus status = decideStatus(row.method, lab.dbMethod(param));
+
+            int i = batch.add(param,
+                    row.value,
+                    status,
+                    lab.methodIndex(row.method),
+                    unit,
+                    row.rangeText(),
+                    page);
+
+            batch.setValueText(i, row.valueText());
+            batch.setMethodText(i, methodText);
+
+            // Abnormality from the DB range, cross-checked with
+            // the range printed in the PDF
+            ReferenceRanges.Range range = param < ranges.length ? ranges[param] : null;
+
+            if (range != null) {
+
+                boolean printed = row.hasRange()
+                        && !(Double.isNaN(row.rangeMin) && Double.isNaN(row.rangeMax));
+
+                batch.setRangeCheck(i,
+                        range.flag(row.value),
+                        printed && !range.sameBounds(row.rangeMin, row.rangeMax));
+            }
+        }
     }
 }
@@ -0,0 +1,52 @@
+package engine;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+// =========================================================
+// LOCAL METRICS ENDPOINT
+// GET http://localhost:<port>/metrics  (Prometheus text format)
+// Uses the JDK's built-in HTTP server; binds to loopback only.
+// =========================================================
+public class MetricsHttpServer {
+
+    private final HttpServer server;
+
+    public MetricsHttpServer(int port) throws IOException {
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+
+        server.createContext("/metrics", exchange -> {
+
+            byte[] body = EngineMetrics.prometheus().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4");
+            exchange.sendResponseHeaders(200, body.length);
+
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+
+        server.setExecutor(Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        }));
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Metrics endpoint: http://localhost:"
+                + server.getAddress().getPort() + "/metrics");
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+}
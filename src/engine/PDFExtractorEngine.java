@@ -1,33 +1,139 @@
 package engine;
 
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessStreamCache;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class PDFExtractorEngine {
 
+    // Documents with fewer pages than this are always stripped
+    // sequentially; splitting them costs more than it saves.
+    public static final int DEFAULT_PARALLEL_MIN_PAGES = 8;
+
+    // Shared across all extractor instances; daemon threads
+    private static final ForkJoinPool EXTRACTION_POOL =
+            new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    private boolean parallel = false;
+    private int parallelMinPages = DEFAULT_PARALLEL_MIN_PAGES;
+
+    // null disables caching
+    private ExtractionCache cache = ExtractionCache.getDefault();
+
+    // null disables admission control
+    private ExtractionBudget budget = ExtractionBudget.getDefault();
+
+    public void setCache(ExtractionCache cache) {
+        this.cache = cache;
+    }
+
+    public void setBudget(ExtractionBudget budget) {
+        this.budget = budget;
+    }
+
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    public void setParallelMinPages(int parallelMinPages) {
+        this.parallelMinPages = parallelMinPages;
+    }
+
+    // Receives extracted pages in order. Return false to stop early.
+    public interface PageListener {
+        boolean onPage(int pageNumber, int pageCount, String pageText);
+    }
+
+    // =========================================================
+    // EXTRACT (through the content-addressed cache)
+    // A cache hit skips PDFBox entirely.
+    // =========================================================
+    // Large documents (see ExtractionBudget) are parsed from the
+    // file without reading it onto the heap, and never split.
     public String extractAndSave(String pdfPath) {
 
-        try (PDDocument document = Loader.loadPDF(new File(pdfPath))) {
+        byte[] pdfBytes;
 
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(true);
-            stripper.setLineSeparator(System.lineSeparator());
+        try {
+            File file = new File(pdfPath);
+
+            if (budget != null && budget.isLarge(file.length())) {
+                return extract(null, file);
+            }
+
+            pdfBytes = Files.readAllBytes(file.toPath());
+
+        } catch (Exception e) {
+            System.err.println("PDF extraction error: " + e.getMessage());
+            return null;
+        }
+
+        return extractAndSave(pdfBytes);
+    }
+
+    // Same, for a PDF already read into memory (e.g. prefetched)
+    public String extractAndSave(byte[] pdfBytes) {
+        return extract(pdfBytes, null);
+    }
+
+    // Exactly one of pdfBytes / pdfFile is set
+    private String extract(byte[] pdfBytes, File pdfFile) {
+
+        ReportEvents.ExtractionEvent event = new ReportEvents.ExtractionEvent();
+        event.begin();
 
-            String text = stripper.getText(document);
+        try {
 
-            // Save inside engine folder
-            Path outputPath = Paths.get("src", "engine", "extracted.txt");
+            String key = null;
 
-            Files.write(outputPath, text.getBytes());
+            if (cache != null) {
 
-            System.out.println("Extracted text saved to: "
-                    + outputPath.toAbsolutePath());
+                key = pdfBytes != null
+                        ? ExtractionCache.keyOf(pdfBytes)
+                        : ExtractionCache.keyOf(pdfFile.toPath());
+                String cached = cache.get(key);
+
+                if (cached != null) {
+                    System.out.println("Extracted text loaded from cache: "
+                            + cache.pathOf(key).toAbsolutePath());
+                    commitEvent(event, "cache", 0, cached.length(), true);
+                    return cached;
+                }
+            }
+
+            int[] pageCount = { 0 };
+            boolean split = parallel && pdfBytes != null;
+            String text;
+
+            try (ExtractionBudget.Permit permit = admit(
+                    pdfBytes != null ? pdfBytes.length : pdfFile.length())) {
+
+                text = split
+                        ? extractParallel(pdfBytes, pageCount, permit)
+                        : extractSequential(pdfBytes, pdfFile, pageCount, permit);
+            }
+
+            commitEvent(event, split ? "parallel" : "sequential",
+                    pageCount[0], text.length(), false);
+
+            if (cache != null) {
+
+                cache.put(key, text);
+
+                System.out.println("Extracted text saved to: "
+                        + cache.pathOf(key).toAbsolutePath());
+            }
 
             return text;
 
@@ -36,4 +142,321 @@ public class PDFExtractorEngine {
             return null;
         }
     }
+
+    private String extractSequential(byte[] pdfBytes,
+            File pdfFile,
+            int[] pageCount,
+            ExtractionBudget.Permit permit) throws IOException {
+
+        try (PDDocument document = load(pdfBytes, pdfFile, permit)) {
+            pageCount[0] = document.getNumberOfPages();
+            return newStripper().getText(document);
+        }
+    }
+
+    // =========================================================
+    // ADMISSION CONTROL (see ExtractionBudget)
+    // Every PDFBox load goes through a permit: it waits until the
+    // document fits the memory budget, uses temp-file scratch
+    // buffers for large documents and books the page count.
+    // =========================================================
+    private ExtractionBudget.Permit admit(long fileBytes) throws IOException {
+
+        if (budget == null) {
+            return null;
+        }
+
+        try {
+            return budget.admit(fileBytes);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for extraction memory");
+        }
+    }
+
+    // Exactly one of pdfBytes / pdfFile is set; permit may be null
+    private static PDDocument load(byte[] pdfBytes,
+            File pdfFile,
+            ExtractionBudget.Permit permit) throws IOException {
+
+        RandomAccessStreamCache.StreamCacheCreateFunction scratch = permit != null
+                ? permit.streamCache()
+                : IOUtils.createMemoryOnlyStreamCache();
+
+        PDDocument document = pdfBytes != null
+                ? Loader.loadPDF(pdfBytes, "", null, null, scratch)
+                : Loader.loadPDF(pdfFile, scratch);
+
+        if (permit != null) {
+            permit.addPages(document.getNumberOfPages());
+        }
+
+        return document;
+    }
+
+    private void commitEvent(ReportEvents.ExtractionEvent event,
+            String mode,
+            int pageCount,
+            int textLength,
+            boolean cacheHit) {
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.reportId = ReportContext.reportId();
+            event.labId = ReportContext.labId();
+            event.mode = mode;
+            event.pageCount = pageCount;
+            event.textLength = textLength;
+            event.cacheHit = cacheHit;
+            event.commit();
+        }
+    }
+
+    // =========================================================
+    // PARALLEL EXTRACTION
+    // Splits the page range into chunks, one per core, and strips
+    // them concurrently. PDFBox objects are not thread-safe, so
+    // each chunk loads its own PDDocument from the shared bytes
+    // and uses its own stripper. Chunks are joined in page order.
+    // =========================================================
+    public String extractParallel(String pdfPath) throws Exception {
+
+        byte[] pdfBytes = Files.readAllBytes(Paths.get(pdfPath));
+
+        try (ExtractionBudget.Permit permit = admit(pdfBytes.length)) {
+            return extractParallel(pdfBytes, new int[1], permit);
+        }
+    }
+
+    private String extractParallel(byte[] pdfBytes,
+            int[] pageCountOut,
+            ExtractionBudget.Permit permit) throws Exception {
+
+        int pageCount;
+        try (PDDocument document = load(pdfBytes, null, permit)) {
+
+            pageCount = document.getNumberOfPages();
+            pageCountOut[0] = pageCount;
+
+            if (pageCount < parallelMinPages) {
+                return newStripper().getText(document);
+            }
+        }
+
+        int chunks = Math.min(pageCount, EXTRACTION_POOL.getParallelism());
+        int pagesPerChunk = (pageCount + chunks - 1) / chunks;
+
+        // every chunk parses its own copy of the document
+        if (permit != null) {
+            permit.reserve(chunks * ExtractionBudget.documentBytes(pdfBytes.length, pagesPerChunk)
+                    - ExtractionBudget.documentBytes(pdfBytes.length, pageCount));
+        }
+
+        RandomAccessStreamCache.StreamCacheCreateFunction scratch = permit != null
+                ? permit.streamCache()
+                : IOUtils.createMemoryOnlyStreamCache();
+
+        List<Future<String>> parts = new ArrayList<>();
+
+        for (int start = 1; start <= pageCount; start += pagesPerChunk) {
+
+            int first = start;
+            int last = Math.min(pageCount, start + pagesPerChunk - 1);
+
+            parts.add(EXTRACTION_POOL.submit(() -> extractRange(pdfBytes, first, last, scratch)));
+        }
+
+        StringBuilder text = new StringBuilder();
+
+        try {
+            for (Future<String> part : parts) {
+                text.append(part.get());
+            }
+        } catch (Exception e) {
+            // The other chunks still hold their copies of the
+            // document; the caller releases the permit only after
+            // they are done
+            awaitAll(parts);
+            throw e;
+        }
+
+        return text.toString();
+    }
+
+    // Waits for every chunk to finish, ignoring its outcome. Not
+    // cancelled: a running chunk cannot be stopped, and get() on a
+    // cancelled one returns at once while it is still parsing.
+    private static void awaitAll(List<Future<String>> parts) {
+
+        boolean interrupted = false;
+
+        for (Future<String> part : parts) {
+            while (true) {
+                try {
+                    part.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (Exception e) {
+                    break;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String extractRange(byte[] pdfBytes,
+            int firstPage,
+            int lastPage,
+            RandomAccessStreamCache.StreamCacheCreateFunction scratch) throws IOException {
+
+        try (PDDocument document = Loader.loadPDF(pdfBytes, "", null, null, scratch)) {
+
+            PDFTextStripper stripper = newStripper();
+            stripper.setStartPage(firstPage);
+            stripper.setEndPage(lastPage);
+
+            return stripper.getText(document);
+        }
+    }
+
+    // =========================================================
+    // STREAMING EXTRACTION (page by page)
+    // Only one page of text is held at a time and each page is
+    // handed to the listener as soon as it is stripped.
+    // Returns the number of pages delivered, or -1 on error.
+    // =========================================================
+    public int extractPages(String pdfPath, PageListener listener) {
+
+        ReportEvents.ExtractionEvent event = new ReportEvents.ExtractionEvent();
+        event.begin();
+
+        int textLength = 0;
+
+        try {
+
+            // A cached extraction is already in memory in full,
+            // so it is delivered as a single chunk.
+            if (cache != null) {
+
+                String cached = cache.get(ExtractionCache.keyOf(Paths.get(pdfPath)));
+
+                if (cached != null) {
+                    listener.onPage(1, 1, cached);
+                    commitEvent(event, "cache", 0, cached.length(), true);
+                    return 1;
+                }
+            }
+
+            // Loaded from the file (not a byte[]) so the whole PDF
+            // is not pulled onto the heap either
+            File pdfFile = new File(pdfPath);
+
+            try (ExtractionBudget.Permit permit = admit(pdfFile.length());
+                    PDDocument document = load(null, pdfFile, permit)) {
+
+                PDFTextStripper stripper = newStripper();
+                int pageCount = document.getNumberOfPages();
+
+                for (int page = 1; page <= pageCount; page++) {
+
+                    stripper.setStartPage(page);
+                    stripper.setEndPage(page);
+
+                    String pageText = stripper.getText(document);
+                    textLength += pageText.length();
+
+                    if (!listener.onPage(page, pageCount, pageText)) {
+                        commitEvent(event, "streaming", page, textLength, false);
+                        return page;
+                    }
+                }
+
+                commitEvent(event, "streaming", pageCount, textLength, false);
+                return pageCount;
+            }
+
+        } catch (Exception e) {
+            System.err.println("PDF extraction error: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // =========================================================
+    // LAYOUT-AWARE EXTRACTION (see TableTextStripper)
+    // Page text plus the result table as cells, using and
+    // updating the lab's column template. Not cached: the
+    // extraction cache holds text only. Returns null on error.
+    // =========================================================
+    public static class TableExtraction {
+
+        public String text;
+        public List<TableRow> rows;
+
+        // Lines of text that are not rows (see TableTextStripper)
+        public String otherText;
+
+        // null when the report's layout was not recognised
+        public ColumnTemplate template;
+    }
+
+    public TableExtraction extractTable(String pdfPath, int labId) {
+
+        File pdfFile = new File(pdfPath);
+
+        if (budget != null && budget.isLarge(pdfFile.length())) {
+            return extractTable(null, pdfFile, labId);
+        }
+
+        try {
+            return extractTable(Files.readAllBytes(pdfFile.toPath()), labId);
+        } catch (Exception e) {
+            System.err.println("PDF extraction error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public TableExtraction extractTable(byte[] pdfBytes, int labId) {
+        return extractTable(pdfBytes, null, labId);
+    }
+
+    private TableExtraction extractTable(byte[] pdfBytes, File pdfFile, int labId) {
+
+        ReportEvents.ExtractionEvent event = new ReportEvents.ExtractionEvent();
+        event.begin();
+
+        try (ExtractionBudget.Permit permit = admit(
+                        pdfBytes != null ? pdfBytes.length : pdfFile.length());
+                PDDocument document = load(pdfBytes, pdfFile, permit)) {
+
+            TableTextStripper stripper = new TableTextStripper(labId);
+            stripper.setLineSeparator(System.lineSeparator());
+
+            TableExtraction table = new TableExtraction();
+            table.text = stripper.getText(document);
+            table.rows = stripper.getRows();
+            table.otherText = stripper.getOtherText();
+            table.template = stripper.getTemplate();
+
+            commitEvent(event, "table", document.getNumberOfPages(),
+                    table.text.length(), false);
+
+            return table;
+
+        } catch (Exception e) {
+            System.err.println("PDF extraction error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private PDFTextStripper newStripper() {
+        PDFTextStripper stripper = new PDFTextStripper();
+        stripper.setSortByPosition(true);
+        stripper.setLineSeparator(System.lineSeparator());
+        return stripper;
+    }
 }
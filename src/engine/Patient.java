@@ -0,0 +1,37 @@
+package engine;
+
+// =========================================================
+// PATIENT
+// One poc.patient row as used for identity checks. The name is
+// normalised once (letters only, lower case) so checking it
+// against a report costs no regex per report.
+// =========================================================
+public class Patient {
+
+    public final int patientId;
+    public final String name;
+    public final String mrNumber;   // null when not recorded
+
+    private final String nameKey;
+
+    public Patient(int patientId, String name, String mrNumber) {
+        this.patientId = patientId;
+        this.name = name;
+        this.mrNumber = mrNumber;
+        this.nameKey = RowScanner.letters(name);
+    }
+
+    // True when the printed name contains this patient's name,
+    // comparing letters only, case-insensitively
+    public boolean isNamedIn(String printedName) {
+        return !nameKey.isEmpty() && RowScanner.letters(printedName).contains(nameKey);
+    }
+
+    // True when the header's MR number contradicts the DB one;
+    // false if either side is unknown
+    public boolean mrNumberDiffers(String printedMrNumber) {
+        return mrNumber != null
+                && printedMrNumber != null
+                && !mrNumber.equalsIgnoreCase(printedMrNumber);
+    }
+}
@@ -0,0 +1,178 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// =========================================================
+// PATIENT CACHE
+// Patients by id and by MR number, shared by all workers.
+// A claimed batch of reports is resolved with one query
+// (prefetch by id, or by MR number); single lookups load on
+// miss. Misses are not cached, so a patient registered after a
+// failed lookup is found on the next report. Entries expire
+// after the TTL, so a long-running engine sees corrected names
+// and MR numbers. Cleared when it reaches MAX_ENTRIES rather
+// than evicting one by one.
+// =========================================================
+public class PatientCache {
+
+    private static final int MAX_ENTRIES = 50_000;
+
+    public static final long DEFAULT_TTL_SECONDS = 300;
+
+    private final DatabaseManager db;
+
+    private final Map<Integer, Entry> byId = new ConcurrentHashMap<>();
+    private final Map<String, Entry> byMrNumber = new ConcurrentHashMap<>();
+
+    private volatile long ttlNanos = DEFAULT_TTL_SECONDS * 1_000_000_000L;
+
+    public PatientCache(DatabaseManager db) {
+        this.db = db;
+    }
+
+    // How long a loaded patient is used before it is read again
+    public void setTtlSeconds(long seconds) {
+        this.ttlNanos = seconds * 1_000_000_000L;
+    }
+
+    // =========================================================
+    // RESOLVE
+    // The queue's patientid when set, otherwise the MR number
+    // printed in the report header. null when neither finds one.
+    // =========================================================
+    public Patient resolve(int patientId, ReportHeader header) {
+
+        if (patientId > 0) {
+            return byId(patientId);
+        }
+
+        if (header.mrNumber != null) {
+            return byMrNumber(header.mrNumber);
+        }
+
+        return null;
+    }
+
+    public Patient byId(int patientId) {
+
+        Patient cached = fresh(byId.get(patientId));
+        if (cached != null) {
+            return cached;
+        }
+
+        Patient patient = db.findPatientById(patientId);
+        put(patient);
+        return patient;
+    }
+
+    public Patient byMrNumber(String mrNumber) {
+
+        Patient cached = fresh(byMrNumber.get(mrNumber));
+        if (cached != null) {
+            return cached;
+        }
+
+        Patient patient = db.findPatientByMrNumber(mrNumber);
+        put(patient);
+        return patient;
+    }
+
+    public boolean containsMrNumber(String mrNumber) {
+        return fresh(byMrNumber.get(mrNumber)) != null;
+    }
+
+    // =========================================================
+    // BULK PREFETCH
+    // Loads every id / MR number not cached (or expired) in one
+    // round trip.
+    // =========================================================
+    public void prefetch(Collection<Integer> patientIds) {
+
+        List<Integer> missing = new ArrayList<>();
+
+        for (Integer id : patientIds) {
+            if (id != null && id > 0 && fresh(byId.get(id)) == null && !missing.contains(id)) {
+                missing.add(id);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        for (Patient patient : db.findPatientsByIds(missing)) {
+            put(patient);
+        }
+    }
+
+    public void prefetchMrNumbers(Collection<String> mrNumbers) {
+
+        List<String> missing = new ArrayList<>();
+
+        for (String mrNumber : mrNumbers) {
+            if (mrNumber != null && !containsMrNumber(mrNumber) && !missing.contains(mrNumber)) {
+                missing.add(mrNumber);
+            }
+        }
+
+        if (missing.isEmpty()) {
+            return;
+        }
+
+        for (Patient patient : db.findPatientsByMrNumbers(missing)) {
+            put(patient);
+        }
+    }
+
+    // One patient, e.g. after it was edited
+    public void invalidate(Patient patient) {
+        byId.remove(patient.patientId);
+        if (patient.mrNumber != null) {
+            byMrNumber.remove(patient.mrNumber);
+        }
+    }
+
+    public void invalidateAll() {
+        byId.clear();
+        byMrNumber.clear();
+    }
+
+    private Patient fresh(Entry entry) {
+        return entry != null && System.nanoTime() - entry.loadedAt < ttlNanos
+                ? entry.patient
+                : null;
+    }
+
+    private void put(Patient patient) {
+
+        if (patient == null) {
+            return;
+        }
+
+        if (byId.size() >= MAX_ENTRIES) {
+            invalidateAll();
+        }
+
+        Entry entry = new Entry(patient, System.nanoTime());
+
+        byId.put(patient.patientId, entry);
+        if (patient.mrNumber != null) {
+            byMrNumber.put(patient.mrNumber, entry);
+        }
+    }
+
+    private static final class Entry {
+
+        final Patient patient;
+        final long loadedAt;
+
+        Entry(Patient patient, long loadedAt) {
+            this.patient = patient;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// =========================================================
+// REFERENCE RANGES (poc.referencerange, see sql/referencerange.sql)
+// A lab's normal ranges per parameter, optionally specific to a
+// gender and an age band. Indexed by the LabValidator catalogue
+// so a report only has to pick one range per parameter
+// (select) and can then flag values with plain comparisons.
+// =========================================================
+public class ReferenceRanges {
+
+    public static final ReferenceRanges EMPTY = new ReferenceRanges(new Range[0][]);
+
+    // =========================================================
+    // ONE RANGE ROW
+    // gender null = any gender; min / max NaN = open bound
+    // =========================================================
+    public static class Range {
+
+        public final String parameter;
+        public final String gender;
+        public final int ageMin;
+        public final int ageMax;
+        public final double min;
+        public final double max;
+
+        public Range(String parameter, String gender,
+                int ageMin, int ageMax,
+                double min, double max) {
+
+            this.parameter = parameter;
+            this.gender = gender;
+            this.ageMin = ageMin;
+            this.ageMax = ageMax;
+            this.min = min;
+            this.max = max;
+        }
+
+        boolean appliesTo(ReportHeader header) {
+
+            if (gender != null && !gender.equals(header.gender)) {
+                return false;
+            }
+
+            if (header.ageYears < 0) {
+                // unknown age: only ranges for all ages
+                return ageMin <= 0 && ageMax == Integer.MAX_VALUE;
+            }
+
+            return header.ageYears >= ageMin && header.ageYears <= ageMax;
+        }
+
+        // Gender-specific beats any gender, then the narrower age band
+        boolean moreSpecificThan(Range other) {
+
+            if ((gender != null) != (other.gender != null)) {
+                return gender != null;
+            }
+
+            return (long) ageMax - ageMin < (long) other.ageMax - other.ageMin;
+        }
+
+        // -1 below, 1 above, 0 within
+        public byte flag(double value) {
+
+            if (!Double.isNaN(min) && value < min) {
+                return -1;
+            }
+            if (!Double.isNaN(max) && value > max) {
+                return 1;
+            }
+            return 0;
+        }
+
+        // Same bounds as the range printed in the PDF (NaN = not printed)
+        public boolean sameBounds(double pdfMin, double pdfMax) {
+            return sameBound(min, pdfMin) && sameBound(max, pdfMax);
+        }
+
+        private static boolean sameBound(double a, double b) {
+            if (Double.isNaN(a) || Double.isNaN(b)) {
+                return Double.isNaN(a) == Double.isNaN(b);
+            }
+            return Math.abs(a - b) <= 1e-9 * Math.max(1, Math.abs(a));
+        }
+    }
+
+    // byParameter[i] = ranges of catalogue parameter i (may be empty)
+    private final Range[][] byParameter;
+
+    private ReferenceRanges(Range[][] byParameter) {
+        this.byParameter = byParameter;
+    }
+
+    static ReferenceRanges index(LabValidator lab, List<Range> rows) {
+
+        if (rows.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<List<Range>> grouped = new ArrayList<>(lab.size());
+        for (int i = 0; i < lab.size(); i++) {
+            grouped.add(new ArrayList<>(1));
+        }
+
+        for (Range r : rows) {
+            int p = lab.parameterIndex(r.parameter);
+            if (p >= 0) {
+                grouped.get(p).add(r);
+            }
+        }
+
+        Range[][] byParameter = new Range[lab.size()][];
+        for (int i = 0; i < byParameter.length; i++) {
+            byParameter[i] = grouped.get(i).toArray(new Range[0]);
+        }
+
+        return new ReferenceRanges(byParameter);
+    }
+
+    public boolean isEmpty() {
+        return byParameter.length == 0;
+    }
+
+    // =========================================================
+    // SELECT FOR ONE PATIENT
+    // Returns the best range per catalogue parameter for this
+    // demographic (null where none applies).
+    // =========================================================
+    public Range[] select(ReportHeader header) {
+
+        Range[] selected = new Range[byParameter.length];
+
+        for (int p = 0; p < byParameter.length; p++) {
+            for (Range r : byParameter[p]) {
+                if (r.appliesTo(header)
+                        && (selected[p] == null || r.moreSpecificThan(selected[p]))) {
+                    selected[p] = r;
+                }
+            }
+        }
+
+        return selected;
+    }
+}
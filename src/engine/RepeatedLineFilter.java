@@ -0,0 +1,195 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// =========================================================
+// REPEATED LINE FILTER
+// Report PDFs repeat the same blocks on every page: patient
+// header (MR Number, Patient Name, Age, Ref. By ...) at the top,
+// signatures and the "Page X of Y" footer at the bottom. This
+// pre-pass drops the leading lines of a page that match the
+// leading lines of the page before, and the trailing lines that
+// match its trailing lines, so the parameter trie and the row
+// scanner see each block once. Lines in the body of a page are
+// never dropped, even if they repeat ("Calculated" wrapped onto
+// its own line); only a body line right next to the header or
+// footer, equal to the line in the same place on the page
+// before, goes with the block.
+//
+// Pages are the chunks passed to filter (streaming feeds one
+// page per call); within a chunk a page ends after its
+// "Page X of Y" footer line. A document without such footers,
+// passed whole, is one page and keeps everything.
+//
+// Only the first and last MAX_BLOCK_LINES lines of the previous
+// page are kept. Stateful: feed the pages of one report in
+// order. One instance per report.
+// =========================================================
+public class RepeatedLineFilter {
+
+    private static final String PAGE_FOOTER = "Page ";
+
+    // Longest header / footer block compared, in lines
+    private static final int MAX_BLOCK_LINES = 16;
+
+    // Keys of the first / last lines of the previous page
+    private List<String> previousHead = List.of();
+    private List<String> previousTail = List.of();
+
+    private long charsIn;
+    private long charsOut;
+
+    // Line start offsets of the current page (reused)
+    private final List<Integer> starts = new ArrayList<>();
+
+    public String filter(String text) {
+
+        StringBuilder out = new StringBuilder(text.length());
+
+        int length = text.length();
+        int pageStart = 0;
+        int start = 0;
+
+        starts.clear();
+
+        while (start < length) {
+
+            int end = text.indexOf('\n', start);
+            if (end < 0) {
+                end = length;
+            }
+
+            starts.add(start);
+            start = end + 1;
+
+            if (isFooter(text, starts.get(starts.size() - 1), end)) {
+                page(text, pageStart, Math.min(start, length), out);
+                pageStart = Math.min(start, length);
+                starts.clear();
+            }
+        }
+
+        if (!starts.isEmpty()) {
+            page(text, pageStart, length, out);
+            starts.clear();
+        }
+
+        charsIn += text.length();
+        charsOut += out.length();
+
+        return out.toString();
+    }
+
+    // =========================================================
+    // ONE PAGE
+    // text[from, to) holds the lines in starts; appends what is
+    // left after dropping the repeated header and footer
+    // =========================================================
+    private void page(String text, int from, int to, StringBuilder out) {
+
+        int lines = starts.size();
+
+        List<String> head = new ArrayList<>(Math.min(lines, MAX_BLOCK_LINES));
+        for (int i = 0; i < lines && i < MAX_BLOCK_LINES; i++) {
+            head.add(key(text, i, to));
+        }
+
+        List<String> tail = new ArrayList<>(Math.min(lines, MAX_BLOCK_LINES));
+        for (int i = Math.max(0, lines - MAX_BLOCK_LINES); i < lines; i++) {
+            tail.add(key(text, i, to));
+        }
+
+        int leading = 0;
+        while (leading < head.size() && leading < previousHead.size()
+                && head.get(leading).equals(previousHead.get(leading))) {
+            leading++;
+        }
+
+        int trailing = 0;
+        while (trailing < tail.size() && trailing < previousTail.size()
+                && leading + trailing < lines) {
+
+            String line = tail.get(tail.size() - 1 - trailing);
+
+            if (!line.equals(previousTail.get(previousTail.size() - 1 - trailing))) {
+                break;
+            }
+            trailing++;
+        }
+
+        int keepFrom = leading < lines ? starts.get(leading) : to;
+        int keepTo = trailing > 0 ? starts.get(lines - trailing) : to;
+
+        out.append(text, keepFrom, keepTo);
+
+        // a blank chunk is not a page
+        if (!text.substring(from, to).isBlank()) {
+            previousHead = head;
+            previousTail = tail;
+        }
+    }
+
+    // Line i of the current page, trimmed; "KMC No: 80889 Page 2
+    // of 6" and "... Page 3 of 6" are the same footer: footer
+    // lines are compared without the page numbers
+    private String key(String text, int i, int to) {
+
+        int start = starts.get(i);
+        int end = i + 1 < starts.size() ? starts.get(i + 1) - 1 : to;
+
+        if (end > start && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+
+        String trimmed = text.substring(start, end).strip();
+
+        int at = trimmed.lastIndexOf(PAGE_FOOTER);
+        if (at < 0 || !isPageOfPages(trimmed, at + PAGE_FOOTER.length())) {
+            return trimmed;
+        }
+
+        return trimmed.substring(0, at) + PAGE_FOOTER + "#";
+    }
+
+    // Line text[start, end) ends with "Page <digits> of <digits>"
+    private static boolean isFooter(String text, int start, int end) {
+
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+
+        String line = text.substring(start, end);
+
+        int at = line.lastIndexOf(PAGE_FOOTER);
+        return at >= 0 && isPageOfPages(line, at + PAGE_FOOTER.length());
+    }
+
+    // "<digits> of <digits>" up to the end of the line
+    private static boolean isPageOfPages(String s, int i) {
+
+        int digits = skipDigits(s, i);
+        if (digits == i || !s.startsWith(" of ", digits)) {
+            return false;
+        }
+
+        int from = digits + 4;
+        return skipDigits(s, from) == s.length() && s.length() > from;
+    }
+
+    private static int skipDigits(String s, int i) {
+        while (i < s.length() && Character.isDigit(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // Characters dropped so far
+    public long getCharsRemoved() {
+        return charsIn - charsOut;
+    }
+
+    public long getCharsIn() {
+        return charsIn;
+    }
+}
@@ -0,0 +1,33 @@
+package engine;
+
+// =========================================================
+// REPORT CONTEXT
+// Report/lab currently being processed on this thread, so that
+// lower layers (DB calls, extraction, validation) can tag their
+// JFR events without threading ids through every signature.
+// =========================================================
+public final class ReportContext {
+
+    private static final ThreadLocal<int[]> CURRENT = new ThreadLocal<>();
+
+    private ReportContext() {
+    }
+
+    public static void set(int reportId, int labId) {
+        CURRENT.set(new int[] { reportId, labId });
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    public static int reportId() {
+        int[] c = CURRENT.get();
+        return c == null ? 0 : c[0];
+    }
+
+    public static int labId() {
+        int[] c = CURRENT.get();
+        return c == null ? 0 : c[1];
+    }
+}
@@ -0,0 +1,89 @@
+package engine;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// =========================================================
+// JAVA FLIGHT RECORDER EVENTS
+// Per-report tracing for continuous JFR recordings, e.g.
+//   java -XX:StartFlightRecording=filename=engine.jfr,settings=default ...
+// Disabled events cost close to nothing; stack traces are off.
+// =========================================================
+public final class ReportEvents {
+
+    private ReportEvents() {
+    }
+
+    @Name("diagnoiq.Extraction")
+    @Label("PDF Extraction")
+    @Category({ "DiagnoIQ", "Report" })
+    @Description("Text extraction of one report PDF")
+    @StackTrace(false)
+    public static class ExtractionEvent extends Event {
+
+        @Label("Report Id")
+        public int reportId;
+
+        @Label("Lab Id")
+        public int labId;
+
+        @Label("Page Count")
+        public int pageCount;
+
+        @Label("Text Length")
+        public int textLength;
+
+        @Label("Cache Hit")
+        public boolean cacheHit;
+
+        @Label("Mode")
+        public String mode;
+    }
+
+    @Name("diagnoiq.Validation")
+    @Label("Method Validation")
+    @Category({ "DiagnoIQ", "Report" })
+    @Description("Parameter scan and method comparison over a chunk of report text")
+    @StackTrace(false)
+    public static class ValidationEvent extends Event {
+
+        @Label("Report Id")
+        public int reportId;
+
+        @Label("Lab Id")
+        public int labId;
+
+        @Label("Text Length")
+        public int textLength;
+
+        @Label("Parameter Count")
+        public int parameterCount;
+
+        @Label("Result Count")
+        public int resultCount;
+    }
+
+    @Name("diagnoiq.DbCall")
+    @Label("Database Call")
+    @Category({ "DiagnoIQ", "Database" })
+    @Description("One DatabaseManager / QueueDatabaseManager query")
+    @StackTrace(false)
+    public static class DbCallEvent extends Event {
+
+        @Label("Query")
+        public String query;
+
+        @Label("Report Id")
+        public int reportId;
+
+        @Label("Lab Id")
+        public int labId;
+
+        @Label("Row Count")
+        public int rowCount;
+    }
+}
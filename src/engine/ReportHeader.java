@@ -0,0 +1,217 @@
+package engine;
+
+// =========================================================
+// REPORT HEADER
+// Patient identity and demographics printed at the top of every
+// page, e.g.
+//
+//   MR Number : 210126061 Bill no :  68514
+//   Patient Name : Mrs. Vasanthi Registered On : ...
+//   Age : 74 Yrs Sample Collected On : ...
+//   Gender : Female Sample Reported On : ...
+//
+// Parsed once per report from the first header only; used for
+// the patient check and to pick the age / gender specific
+// reference ranges.
+// =========================================================
+public class ReportHeader {
+
+    // Only the first part of the text holds the header
+    private static final int HEADER_CHARS = 2000;
+
+    public static final ReportHeader UNKNOWN = new ReportHeader(null, null, -1, null);
+
+    // Labels of the right-hand header column, which follow the
+    // left-hand value on the same line
+    private static final String[] RIGHT_COLUMN = {
+            "Bill no", "Registered On", "Sample Collected", "Sample Reported", "Barcode"
+    };
+
+    // null when not printed
+    public final String mrNumber;
+    public final String patientName;
+
+    // Age in whole years (0 for months / days), -1 when not printed
+    public final int ageYears;
+
+    // "M", "F" or null when not printed
+    public final String gender;
+
+    public ReportHeader(String mrNumber, String patientName, int ageYears, String gender) {
+        this.mrNumber = mrNumber;
+        this.patientName = patientName;
+        this.ageYears = ageYears;
+        this.gender = gender;
+    }
+
+    // Where to look for the patient's name: the header value when
+    // printed, otherwise the given text (typically the whole report)
+    public String patientNameOr(String fallback) {
+        return patientName != null ? patientName : fallback;
+    }
+
+    public static ReportHeader parse(CharSequence text) {
+
+        if (text == null) {
+            return UNKNOWN;
+        }
+
+        String head = text.subSequence(0, Math.min(text.length(), HEADER_CHARS)).toString();
+
+        return new ReportHeader(
+                parseMrNumber(head),
+                parseText(head, "Patient Name"),
+                parseAge(head),
+                parseGender(head));
+    }
+
+    // =========================================================
+    // MR NUMBER  "MR Number : 210126061 Bill no : ..."
+    // =========================================================
+    private static String parseMrNumber(String head) {
+
+        int i = valueAfterLabel(head, "MR Number");
+        if (i < 0) {
+            i = valueAfterLabel(head, "MR No");
+        }
+        if (i < 0) {
+            return null;
+        }
+
+        int end = i;
+        while (end < head.length() && !Character.isWhitespace(head.charAt(end))) {
+            end++;
+        }
+
+        return end > i ? head.substring(i, end) : null;
+    }
+
+    // =========================================================
+    // FREE TEXT  "Patient Name : Mrs. Vasanthi Registered On : ..."
+    // Up to the end of the line or the next right-column label.
+    // =========================================================
+    private static String parseText(String head, String label) {
+
+        int i = valueAfterLabel(head, label);
+        if (i < 0) {
+            return null;
+        }
+
+        int end = head.indexOf('\n', i);
+        if (end < 0) {
+            end = head.length();
+        }
+
+        for (String next : RIGHT_COLUMN) {
+            int at = indexOfIgnoreCase(head, next, i);
+            if (at >= 0 && at < end) {
+                end = at;
+            }
+        }
+
+        String value = head.substring(i, end).strip();
+        return value.isEmpty() ? null : value;
+    }
+
+    // =========================================================
+    // AGE  "Age : 74 Yrs", "Age: 8 Months", "Age : 12 Days"
+    // =========================================================
+    private static int parseAge(String head) {
+
+        int i = valueAfterLabel(head, "Age");
+        if (i < 0) {
+            return -1;
+        }
+
+        int years = 0;
+        int digits = 0;
+
+        while (i < head.length() && Character.isDigit(head.charAt(i))) {
+            years = years * 10 + (head.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+
+        if (digits == 0) {
+            return -1;
+        }
+
+        while (i < head.length() && head.charAt(i) == ' ') {
+            i++;
+        }
+
+        // infants: ranges are keyed by whole years
+        if (head.regionMatches(true, i, "Mon", 0, 3)
+                || head.regionMatches(true, i, "Day", 0, 3)) {
+            return 0;
+        }
+
+        return years;
+    }
+
+    // =========================================================
+    // GENDER  "Gender : Female", "Sex : M"
+    // =========================================================
+    private static String parseGender(String head) {
+
+        int i = valueAfterLabel(head, "Gender");
+        if (i < 0) {
+            i = valueAfterLabel(head, "Sex");
+        }
+        if (i < 0 || i >= head.length()) {
+            return null;
+        }
+
+        char c = Character.toUpperCase(head.charAt(i));
+
+        if (c == 'F') {
+            return "F";
+        }
+        if (c == 'M') {
+            return "M";
+        }
+        return null;
+    }
+
+    // Offset of the value after "<label> :" (case-insensitive), or -1
+    private static int valueAfterLabel(String head, String label) {
+
+        int from = 0;
+
+        while (true) {
+
+            int at = indexOfIgnoreCase(head, label, from);
+            if (at < 0) {
+                return -1;
+            }
+
+            int i = at + label.length();
+
+            while (i < head.length() && head.charAt(i) == ' ') {
+                i++;
+            }
+
+            // "Age :" and not e.g. "Page"
+            boolean wordStart = at == 0 || !Character.isLetter(head.charAt(at - 1));
+
+            if (wordStart && i < head.length() && head.charAt(i) == ':') {
+                i++;
+                while (i < head.length() && head.charAt(i) == ' ') {
+                    i++;
+                }
+                return i;
+            }
+
+            from = at + 1;
+        }
+    }
+
+    private static int indexOfIgnoreCase(String s, String word, int from) {
+        for (int i = from; i <= s.length() - word.length(); i++) {
+            if (s.regionMatches(true, i, word, 0, word.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
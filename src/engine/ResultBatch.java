@@ -0,0 +1,299 @@
+package engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// =========================================================
+// RESULT BATCH
+// All validation results of one report, stored column-wise in
+// primitive arrays: no object per row. Parameters and methods
+// are indexes into the lab's catalogue (LabValidator), the
+// value is parsed once into a double (its printed text is kept
+// for display and storage), and the status is an enum ordinal. Not thread-safe: one batch per report.
+// =========================================================
+public class ResultBatch {
+
+    private static final int NO_METHOD = -1;
+
+    // abnormality(i) when no reference range is known
+    public static final byte ABNORMALITY_UNKNOWN = Byte.MIN_VALUE;
+
+    private final LabValidator lab;
+
+    private int size;
+
+    private int[] parameter;
+    private double[] value;
+    private String[] valueText;
+    private boolean[] hasValue;
+    private byte[] status;
+    private int[] pdfMethod;
+    private int[] page;
+    private String[] unit;
+    private String[] referenceRange;
+    private String[] methodText;
+    private byte[] abnormality;
+    private boolean[] rangeMismatch;
+
+    public ResultBatch(LabValidator lab) {
+        this(lab, Math.max(8, lab.size()));
+    }
+
+    public ResultBatch(LabValidator lab, int capacity) {
+
+        this.lab = lab;
+
+        parameter = new int[capacity];
+        value = new double[capacity];
+        valueText = new String[capacity];
+        hasValue = new boolean[capacity];
+        status = new byte[capacity];
+        pdfMethod = new int[capacity];
+        page = new int[capacity];
+        unit = new String[capacity];
+        referenceRange = new String[capacity];
+        methodText = new String[capacity];
+        abnormality = new byte[capacity];
+        rangeMismatch = new boolean[capacity];
+    }
+
+    // =========================================================
+    // WRITE
+    // =========================================================
+
+    // pdfMethodIndex: catalogue index of the PDF method, -1 if none.
+    // Pass Double.NaN as value when the row has no value.
+    public int add(int parameterIndex,
+            double rowValue,
+            ResultStatus rowStatus,
+            int pdfMethodIndex,
+            String rowUnit,
+            String rowRange,
+            int rowPage) {
+
+        if (size == parameter.length) {
+            grow();
+        }
+
+        int i = size++;
+
+        parameter[i] = parameterIndex;
+        value[i] = rowValue;
+        valueText[i] = null;
+        hasValue[i] = !Double.isNaN(rowValue);
+        status[i] = (byte) rowStatus.ordinal();
+        pdfMethod[i] = pdfMethodIndex;
+        page[i] = rowPage;
+        unit[i] = rowUnit;
+        referenceRange[i] = rowRange;
+        methodText[i] = null;
+        abnormality[i] = ABNORMALITY_UNKNOWN;
+        rangeMismatch[i] = false;
+
+        return i;
+    }
+
+    // flag: -1 low, 0 normal, 1 high (from the DB reference range);
+    // mismatch: the PDF prints a different range than the DB has
+    public void setRangeCheck(int i, byte flag, boolean mismatch) {
+        abnormality[i] = flag;
+        rangeMismatch[i] = mismatch;
+    }
+
+    // Value as printed in the PDF ("174.0", "6.290"); without
+    // it valueText(i) formats the double
+    public void setValueText(int i, String text) {
+        valueText[i] = text;
+    }
+
+    // Raw text the PDF method was looked for in (method cell or
+    // row tail), kept so re-validation can match it against a
+    // later catalogue
+    public void setMethodText(int i, String text) {
+        methodText[i] = text;
+    }
+
+    // Reuses the arrays for the next report of the same lab
+    public void clear() {
+        Arrays.fill(valueText, 0, size, null);
+        Arrays.fill(unit, 0, size, null);
+        Arrays.fill(referenceRange, 0, size, null);
+        Arrays.fill(methodText, 0, size, null);
+        size = 0;
+    }
+
+    private void grow() {
+
+        int capacity = parameter.length * 2;
+
+        parameter = Arrays.copyOf(parameter, capacity);
+        value = Arrays.copyOf(value, capacity);
+        valueText = Arrays.copyOf(valueText, capacity);
+        hasValue = Arrays.copyOf(hasValue, capacity);
+        status = Arrays.copyOf(status, capacity);
+        pdfMethod = Arrays.copyOf(pdfMethod, capacity);
+        page = Arrays.copyOf(page, capacity);
+        unit = Arrays.copyOf(unit, capacity);
+        referenceRange = Arrays.copyOf(referenceRange, capacity);
+        methodText = Arrays.copyOf(methodText, capacity);
+        abnormality = Arrays.copyOf(abnormality, capacity);
+        rangeMismatch = Arrays.copyOf(rangeMismatch, capacity);
+    }
+
+    // =========================================================
+    // READ
+    // =========================================================
+    public LabValidator getLab() {
+        return lab;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int parameterIndex(int i) {
+        return parameter[i];
+    }
+
+    public String parameter(int i) {
+        return lab.parameter(parameter[i]);
+    }
+
+    public boolean hasValue(int i) {
+        return hasValue[i];
+    }
+
+    // NaN when hasValue(i) is false
+    public double value(int i) {
+        return value[i];
+    }
+
+    public ResultStatus status(int i) {
+        return ResultStatus.ofOrdinal(status[i]);
+    }
+
+    public String pdfMethod(int i) {
+        return pdfMethod[i] == NO_METHOD ? null : lab.method(pdfMethod[i]);
+    }
+
+    public String dbMethod(int i) {
+        return lab.dbMethod(parameter[i]);
+    }
+
+    public String unit(int i) {
+        return unit[i];
+    }
+
+    public String referenceRange(int i) {
+        return referenceRange[i];
+    }
+
+    public String methodText(int i) {
+        return methodText[i];
+    }
+
+    public int page(int i) {
+        return page[i];
+    }
+
+    public boolean hasAbnormality(int i) {
+        return abnormality[i] != ABNORMALITY_UNKNOWN;
+    }
+
+    // -1 low, 0 normal, 1 high, ABNORMALITY_UNKNOWN
+    public byte abnormality(int i) {
+        return abnormality[i];
+    }
+
+    public boolean isAbnormal(int i) {
+        return hasAbnormality(i) && abnormality[i] != 0;
+    }
+
+    public boolean rangeMismatch(int i) {
+        return rangeMismatch[i];
+    }
+
+    // "LOW", "NORMAL", "HIGH" or null without a reference range
+    public String abnormalityText(int i) {
+        switch (abnormality[i]) {
+            case -1:
+                return "LOW";
+            case 0:
+                return "NORMAL";
+            case 1:
+                return "HIGH";
+            default:
+                return null;
+        }
+    }
+
+    // Value for display / text storage: as printed in the PDF,
+    // else the double formatted as 15.6, 3735 (no ".0"); null
+    // without a value
+    public String valueText(int i) {
+
+        if (!hasValue[i]) {
+            return null;
+        }
+
+        if (valueText[i] != null) {
+            return valueText[i];
+        }
+
+        double v = value[i];
+
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) {
+            return Long.toString((long) v);
+        }
+
+        return Double.toString(v);
+    }
+
+    // Rows per status, indexed by ResultStatus.ordinal()
+    public int[] countByStatus() {
+
+        int[] counts = new int[ResultStatus.values().length];
+
+        for (int i = 0; i < size; i++) {
+            counts[status[i]]++;
+        }
+
+        return counts;
+    }
+
+    // =========================================================
+    // LEGACY VIEW
+    // One ValidationResult object per row, for callers that
+    // still want the List form.
+    // =========================================================
+    public List<MethodValidationEngine.ValidationResult> toResults() {
+
+        List<MethodValidationEngine.ValidationResult> results = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+
+            MethodValidationEngine.ValidationResult r =
+                    new MethodValidationEngine.ValidationResult(
+                            parameter(i),
+                            valueText(i),
+                            pdfMethod(i),
+                            dbMethod(i),
+                            status(i).label());
+
+            r.unit = unit[i];
+            r.referenceRange = referenceRange[i];
+            r.page = page[i];
+            r.abnormality = hasAbnormality(i) ? Integer.valueOf(abnormality[i]) : null;
+            r.rangeMismatch = rangeMismatch[i];
+
+            results.add(r);
+        }
+
+        return results;
+    }
+}
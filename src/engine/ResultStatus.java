@@ -0,0 +1,51 @@
+package engine;
+
+// =========================================================
+// VALIDATION STATUS
+// Outcome of comparing the PDF method with the DB method.
+// label() is the text printed in reports and stored in the
+// database (poc.extractedrow.status).
+// =========================================================
+public enum ResultStatus {
+
+    MATCH_NO_METHOD("MATCH (NO METHOD)"),
+    DB_METHOD_MISSING("DB METHOD MISSING"),
+    PDF_METHOD_NOT_FOUND("PDF METHOD NOT FOUND"),
+    MATCH("MATCH"),
+    MISMATCH("MISMATCH");
+
+    private static final ResultStatus[] VALUES = values();
+
+    private final String label;
+
+    ResultStatus(String label) {
+        this.label = label;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    // Results with a matching (or no) method are stored
+    public boolean isMatch() {
+        return this == MATCH || this == MATCH_NO_METHOD;
+    }
+
+    static ResultStatus ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    public static ResultStatus fromLabel(String label) {
+        for (ResultStatus s : VALUES) {
+            if (s.label.equals(label)) {
+                return s;
+            }
+        }
+        throw new IllegalArgumentException("Unknown status: " + label);
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,698 @@
+package engine;
+
+import org.ahocorasick.trie.Emit;
+import org.ahocorasick.trie.Trie;
+import org.ahocorasick.trie.handler.EmitHandler;
+
+// =========================================================
+// ROW SCANNER
+// Hand-written tokenizer for one result row, e.g.
+//
+//   Total WBC Count 8300 cells/cumm 4000-11000 Electrical Impedance
+//   |-- parameter --|value|-- unit --|- range -|------ method ------|
+//
+// Works directly on offsets into the page text: no regex, no
+// line substring, no intermediate Strings. All spans are
+// [start, end) offsets into the scanned text, -1 when absent.
+// One instance per thread / session; it is reused for every row.
+// =========================================================
+public class RowScanner {
+
+    public int lineStart;
+    public int lineEnd;
+
+    public int valueStart;
+    public int valueEnd;
+    public double value;
+    // Value as printed in the value cell (scanCells only; its
+    // offsets are gone once the other cells are scanned)
+    private String cellValue;
+
+    public int unitStart;
+    public int unitEnd;
+
+    public int rangeStart;
+    public int rangeEnd;
+    // Bounds of the printed range ("12-16", "< 5", "> 40"), NaN if open / absent
+    public double rangeMin;
+    public double rangeMax;
+
+    public int methodStart;
+    public int methodEnd;
+    // Catalogue entry of the matched method (no copy)
+    public String method;
+
+    private CharSequence text;
+
+    private final Slice slice = new Slice();
+    private final BestMethod bestMethod = new BestMethod();
+
+    // =========================================================
+    // SCAN
+    // nameStart / nameEnd: span of the parameter name in text.
+    // Returns false when the row has no numeric value (title or
+    // header rows), in which case only the line span is set.
+    // =========================================================
+    public boolean scan(CharSequence text, int nameStart, int nameEnd, Trie methodTrie) {
+
+        this.text = text;
+        reset();
+
+        findLine(nameStart, nameEnd);
+
+        if (!findValue(nameEnd)) {
+            return false;
+        }
+
+        findMethod(methodTrie);
+
+        int limit = methodStart >= 0 ? methodStart : lineEnd;
+        findUnitAndRange(limit);
+        parseRangeBounds();
+
+        return true;
+    }
+
+    // =========================================================
+    // CELLS (layout-aware extraction, see TableTextStripper)
+    // The columns are already split, so only the number in the
+    // value cell, the catalogue method in the method cell and the
+    // range in the range cell are looked for. Afterwards the span
+    // helpers refer to the range cell. Returns false when the
+    // value cell holds no number.
+    // =========================================================
+    public boolean scanCells(CharSequence valueCell,
+            CharSequence methodCell,
+            CharSequence rangeCell,
+            Trie methodTrie) {
+
+        reset();
+
+        if (valueCell == null) {
+            return false;
+        }
+
+        setCell(valueCell);
+        if (!findValue(0)) {
+            return false;
+        }
+        cellValue = span(valueStart, valueEnd);
+
+        if (methodCell != null) {
+            setCell(methodCell);
+            valueEnd = 0;
+            findMethod(methodTrie);
+        }
+
+        valueStart = valueEnd = -1;
+        methodStart = methodEnd = -1;
+
+        if (rangeCell != null) {
+
+            setCell(rangeCell);
+
+            findRange(skipToRangeToken(0, lineEnd), lineEnd);
+            parseRangeBounds();
+        }
+
+        return true;
+    }
+
+    // =========================================================
+    // METHOD ONLY
+    // Best catalogue method in a stored method text (re-validation
+    // against a changed catalogue, see ExtractedRowStore); null if
+    // none. Same matching as a full scan.
+    // =========================================================
+    public String matchMethod(CharSequence methodText, Trie methodTrie) {
+
+        reset();
+
+        if (methodText == null) {
+            return null;
+        }
+
+        setCell(methodText);
+        valueEnd = 0;
+        findMethod(methodTrie);
+
+        return method;
+    }
+
+    private void setCell(CharSequence cell) {
+        text = cell;
+        lineStart = 0;
+        lineEnd = cell.length();
+    }
+
+    private boolean isTokenStart(int i) {
+        return i == 0 || text.charAt(i - 1) == ' ';
+    }
+
+    public boolean hasUnit() {
+        return unitStart >= 0;
+    }
+
+    public boolean hasRange() {
+        return rangeStart >= 0;
+    }
+
+    public boolean hasMethod() {
+        return method != null;
+    }
+
+    private void reset() {
+        valueStart = valueEnd = -1;
+        cellValue = null;
+        unitStart = unitEnd = -1;
+        rangeStart = rangeEnd = -1;
+        methodStart = methodEnd = -1;
+        method = null;
+        value = 0;
+        rangeMin = rangeMax = Double.NaN;
+    }
+
+    // =========================================================
+    // LINE BOUNDARIES
+    // =========================================================
+    private void findLine(int nameStart, int nameEnd) {
+
+        int start = nameStart;
+        while (start > 0 && text.charAt(start - 1) != '\n') {
+            start--;
+        }
+
+        int end = nameEnd;
+        int length = text.length();
+        while (end < length && text.charAt(end) != '\n') {
+            end++;
+        }
+
+        // Windows line separator
+        if (end > start && text.charAt(end - 1) == '\r') {
+            end--;
+        }
+
+        lineStart = start;
+        lineEnd = end;
+    }
+
+    // =========================================================
+    // VALUE: first number after the parameter name
+    // Same shape as the old regex [-+]?[0-9]*\.?[0-9]+
+    // =========================================================
+    private boolean findValue(int from) {
+
+        for (int i = from; i < lineEnd; i++) {
+            if (isNumberStart(i)) {
+                parseNumber(i);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isNumberStart(int i) {
+
+        char c = text.charAt(i);
+
+        if (isDigit(c)) {
+            return true;
+        }
+
+        if (c == '.') {
+            return i + 1 < lineEnd && isDigit(text.charAt(i + 1));
+        }
+
+        if (c == '-' || c == '+') {
+            if (i + 1 >= lineEnd) {
+                return false;
+            }
+            char next = text.charAt(i + 1);
+            return isDigit(next)
+                    || (next == '.' && i + 2 < lineEnd && isDigit(text.charAt(i + 2)));
+        }
+
+        return false;
+    }
+
+    private void parseNumber(int start) {
+
+        int i = start;
+        boolean negative = false;
+
+        char c = text.charAt(i);
+        if (c == '-' || c == '+') {
+            negative = (c == '-');
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+
+        while (i < lineEnd && isDigit(text.charAt(i))) {
+            mantissa = mantissa * 10 + (text.charAt(i) - '0');
+            digits++;
+            i++;
+        }
+
+        if (i + 1 < lineEnd && text.charAt(i) == '.' && isDigit(text.charAt(i + 1))) {
+            i++;
+            while (i < lineEnd && isDigit(text.charAt(i))) {
+                mantissa = mantissa * 10 + (text.charAt(i) - '0');
+                digits++;
+                scale++;
+                i++;
+            }
+        }
+
+        valueStart = start;
+        valueEnd = i;
+
+        if (digits > 15) {
+            // Beyond exact long/double range; rare enough to allocate
+            value = Double.parseDouble(text.subSequence(start, i).toString());
+            return;
+        }
+
+        double v = mantissa;
+        if (scale > 0) {
+            v = v / POWERS_OF_TEN[scale];
+        }
+
+        value = negative ? -v : v;
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7,
+            1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+
+    // =========================================================
+    // METHOD: longest (then rightmost) catalogue method after
+    // the value, found with one pass of the method automaton
+    // =========================================================
+    private void findMethod(Trie methodTrie) {
+
+        if (methodTrie == null || valueEnd >= lineEnd) {
+            return;
+        }
+
+        slice.set(text, valueEnd, lineEnd);
+        bestMethod.best = null;
+
+        methodTrie.parseText(slice, bestMethod);
+
+        Emit best = bestMethod.best;
+        if (best != null) {
+            methodStart = valueEnd + best.getStart();
+            methodEnd = valueEnd + best.getEnd() + 1;
+            method = best.getKeyword();
+        }
+    }
+
+    // =========================================================
+    // UNIT and REFERENCE RANGE between value and method
+    // Unit: words up to the first token that starts with a
+    //       digit or < / > (unit tokens like 10^3/uL excepted),
+    //       or up to a range label ("Desirable :", "Adult :").
+    // Range: from there on while the chars look like a range.
+    // =========================================================
+    private static final String[] RANGE_LABELS = {
+            "Desirable", "Borderline", "Optimal", "Normal", "Adult", "Adults",
+            "Adolescent", "Child", "Children", "Male", "Female", "Men", "Women",
+            "Newborn", "Infant",
+    };
+
+    private void findUnitAndRange(int limit) {
+
+        int i = skipSpaces(valueEnd, limit);
+        int unitFrom = i;
+        int unitTo = i;
+
+        while (i < limit) {
+
+            if (isRangeToken(i, limit)) {
+                break;
+            }
+
+            int tokenEnd = i;
+            while (tokenEnd < limit && text.charAt(tokenEnd) != ' ') {
+                tokenEnd++;
+            }
+
+            if (isRangeLabel(i, tokenEnd, limit)) {
+                i = skipToRangeToken(tokenEnd, limit);
+                break;
+            }
+
+            unitTo = tokenEnd;
+            i = skipSpaces(tokenEnd, limit);
+        }
+
+        if (unitTo > unitFrom) {
+            unitStart = unitFrom;
+            unitEnd = unitTo;
+        }
+
+        findRange(i, limit);
+    }
+
+    // A word of letters that ends in ':', is followed by ':' or
+    // is a known label. Units carry '/', '%' or digits, so e.g.
+    // "mg/dL" never matches.
+    private boolean isRangeLabel(int start, int end, int limit) {
+
+        int wordEnd = end > start && text.charAt(end - 1) == ':' ? end - 1 : end;
+
+        if (wordEnd - start < 3) {
+            return false;
+        }
+
+        for (int j = start; j < wordEnd; j++) {
+            if (!isAsciiLetter(text.charAt(j))) {
+                return false;
+            }
+        }
+
+        if (wordEnd < end) {
+            return true;
+        }
+
+        int next = skipSpaces(end, limit);
+        if (next < limit && text.charAt(next) == ':') {
+            return true;
+        }
+
+        for (String label : RANGE_LABELS) {
+            if (label.length() == wordEnd - start && regionMatchesIgnoreCase(start, label)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean regionMatchesIgnoreCase(int start, String word) {
+        for (int k = 0; k < word.length(); k++) {
+            if (Character.toLowerCase(text.charAt(start + k))
+                    != Character.toLowerCase(word.charAt(k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // First range token from i on, skipping a label such as
+    // "Desirable :" or "Adult :"; limit if there is none
+    private int skipToRangeToken(int i, int limit) {
+        while (i < limit && !(isTokenStart(i) && isRangeToken(i, limit))) {
+            i++;
+        }
+        return i;
+    }
+
+    // Range chars from i on
+    private void findRange(int i, int limit) {
+
+        if (i >= limit) {
+            return;
+        }
+
+        int from = i;
+        int to = i;
+
+        while (i < limit && isRangeChar(text.charAt(i))) {
+            i++;
+            if (text.charAt(i - 1) != ' ') {
+                to = i;
+            }
+        }
+
+        if (to > from) {
+            rangeStart = from;
+            rangeEnd = to;
+        }
+    }
+
+    // =========================================================
+    // RANGE BOUNDS
+    // "a-b" / "a - b" / "a – b" -> [a, b], "< b" -> [NaN, b],
+    // "> a" -> [a, NaN]. The '-' is a separator, not a sign.
+    // =========================================================
+    private void parseRangeBounds() {
+
+        if (rangeStart < 0) {
+            return;
+        }
+
+        char first = text.charAt(rangeStart);
+
+        int i = rangeStart;
+        double a = Double.NaN;
+        double b = Double.NaN;
+
+        i = nextNumberStart(i, rangeEnd);
+        if (i < rangeEnd) {
+            a = parseUnsigned(i, rangeEnd);
+            i = numberEnd;
+            i = nextNumberStart(i, rangeEnd);
+            if (i < rangeEnd) {
+                b = parseUnsigned(i, rangeEnd);
+            }
+        }
+
+        if (first == '<') {
+            rangeMax = a;
+        } else if (first == '>') {
+            rangeMin = a;
+        } else if (!Double.isNaN(b)) {
+            rangeMin = a;
+            rangeMax = b;
+        }
+    }
+
+    private int numberEnd;
+
+    private int nextNumberStart(int i, int end) {
+        while (i < end && !isDigit(text.charAt(i))
+                && !(text.charAt(i) == '.' && i + 1 < end && isDigit(text.charAt(i + 1)))) {
+            i++;
+        }
+        return i;
+    }
+
+    // Sets numberEnd
+    private double parseUnsigned(int i, int end) {
+
+        long mantissa = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean fraction = false;
+
+        while (i < end) {
+            char c = text.charAt(i);
+            if (isDigit(c)) {
+                mantissa = mantissa * 10 + (c - '0');
+                digits++;
+                if (fraction) {
+                    scale++;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+            i++;
+        }
+
+        numberEnd = i;
+
+        if (digits > 15 || scale >= POWERS_OF_TEN.length) {
+            return Double.NaN;
+        }
+
+        return mantissa / POWERS_OF_TEN[scale];
+    }
+
+    private boolean isRangeToken(int i, int limit) {
+
+        char c = text.charAt(i);
+
+        if (c == '<' || c == '>') {
+            return true;
+        }
+
+        if (!isDigit(c)) {
+            return false;
+        }
+
+        // 10^3/uL, 10^6/µL ... are units, not ranges
+        for (int j = i; j < limit && text.charAt(j) != ' '; j++) {
+            char t = text.charAt(j);
+            if (t == '/' || t == '^') {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isRangeChar(char c) {
+        return isDigit(c) || c == '.' || c == '-' || c == '<' || c == '>'
+                || c == '=' || c == ' ' || c == '\u2013';
+    }
+
+    private int skipSpaces(int i, int limit) {
+        while (i < limit && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // =========================================================
+    // SPAN HELPERS (allocate only when a String is really needed)
+    // =========================================================
+    // Value exactly as printed ("174.0", "6.290", "05")
+    public String valueText() {
+        return cellValue != null ? cellValue : span(valueStart, valueEnd);
+    }
+
+    public String unitText() {
+        return span(unitStart, unitEnd);
+    }
+
+    public String rangeText() {
+        return span(rangeStart, rangeEnd);
+    }
+
+    // Row text after the value, where the method was looked for;
+    // null after scanCells (the method cell is used there)
+    public String tailText() {
+
+        if (valueEnd < 0) {
+            return null;
+        }
+
+        String tail = text.subSequence(valueEnd, lineEnd).toString().trim();
+        return tail.isEmpty() ? null : tail;
+    }
+
+    private String span(int start, int end) {
+        return start < 0 ? null : text.subSequence(start, end).toString();
+    }
+
+    // =========================================================
+    // LETTER-ONLY, CASE-INSENSITIVE EQUALITY
+    // Same result as comparing s.replaceAll("[^a-zA-Z]", "")
+    // .toLowerCase() of both sides, without building Strings.
+    // =========================================================
+    public static boolean sameLetters(CharSequence a, CharSequence b) {
+
+        int i = 0;
+        int j = 0;
+        int la = a == null ? 0 : a.length();
+        int lb = b == null ? 0 : b.length();
+
+        while (true) {
+
+            while (i < la && !isAsciiLetter(a.charAt(i))) {
+                i++;
+            }
+            while (j < lb && !isAsciiLetter(b.charAt(j))) {
+                j++;
+            }
+
+            if (i == la || j == lb) {
+                return i == la && j == lb;
+            }
+
+            if ((a.charAt(i) | 0x20) != (b.charAt(j) | 0x20)) {
+                return false;
+            }
+
+            i++;
+            j++;
+        }
+    }
+
+    // Letters only, lower case: the key sameLetters compares by
+    public static String letters(CharSequence s) {
+
+        if (s == null) {
+            return "";
+        }
+
+        StringBuilder out = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (isAsciiLetter(c)) {
+                out.append((char) (c | 0x20));
+            }
+        }
+
+        return out.toString();
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // Window over text[start, end) without copying
+    private static final class Slice implements CharSequence {
+
+        private CharSequence text;
+        private int start;
+        private int end;
+
+        void set(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return text.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return text.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return text.subSequence(start, end).toString();
+        }
+    }
+
+    private static final class BestMethod implements EmitHandler {
+
+        Emit best;
+
+        @Override
+        public boolean emit(Emit emit) {
+
+            if (best == null
+                    || emit.size() > best.size()
+                    || (emit.size() == best.size() && emit.getStart() > best.getStart())) {
+                best = emit;
+            }
+
+            return true;
+        }
+    }
+}
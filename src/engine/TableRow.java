@@ -0,0 +1,34 @@
+package engine;
+
+// =========================================================
+// TABLE ROW
+// One result row from layout-aware extraction (see
+// TableTextStripper), already split into its columns. Empty
+// cells are null.
+// =========================================================
+public class TableRow {
+
+    public final int page;
+
+    public String name;
+    public String value;
+    public String unit;
+    public String range;
+    public String method;
+
+    // Name-only line directly below: the rest of a wrapped name,
+    // or the title of the next test
+    public String nameContinuation;
+
+    // Name-only line directly above: a section / test title, or
+    // the first half of a name whose value sits on its last line
+    public String heading;
+
+    // The row as plain text, for the text scanner when its name
+    // is not found in the catalogue
+    public String line;
+
+    public TableRow(int page) {
+        this.page = page;
+    }
+}
@@ -0,0 +1,257 @@
+package engine;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.pdfbox.text.TextPosition;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// =========================================================
+// LAYOUT-AWARE TEXT STRIPPER
+// Produces the usual page text and, alongside it, the result
+// table as TableRows: every word is assigned to a column by its
+// x position (TextPosition) using the lab's ColumnTemplate, so
+// value, unit, range and method come out as separate cells
+// instead of being guessed back from a flattened line.
+//
+// The template is taken from the per-lab cache, or learned
+// from the first "Test Name Result Unit ... Method" header row
+// and cached for the lab's next reports. On a page with a
+// header row, only lines below it are rows (the patient block
+// above is not a table).
+//
+// Name-only lines are recorded as the continuation of the row
+// above and the heading of the row below; which one is really
+// part of the name is decided against the catalogue (see
+// MethodValidationEngine.Session.scanTable). Every line that
+// does not end up as a row (no Result cell, above the header,
+// no layout known yet) is kept in getOtherText, the only text
+// the text scanner reads again after the rows.
+// One instance per document; not thread-safe. Final: the
+// constructor configures the stripper through its own methods.
+// =========================================================
+public final class TableTextStripper extends PDFTextStripper {
+
+    // One word of the current line with its horizontal extent
+    static final class Word {
+
+        final String text;
+        final float x;
+        final float xEnd;
+        final float height;
+
+        Word(String text, float x, float xEnd, float height) {
+            this.text = text;
+            this.x = x;
+            this.xEnd = xEnd;
+            this.height = height;
+        }
+    }
+
+    private final int labId;
+
+    private ColumnTemplate template;
+    private boolean templateChanged = false;
+
+    private final List<TableRow> rows = new ArrayList<>();
+    private final List<Word> line = new ArrayList<>();
+    private final StringBuilder otherText = new StringBuilder();
+
+    // Per page
+    private int pageRowsFrom;
+    private TableRow lastRow;
+    private boolean lastLineWasRow;
+    private String heading;
+
+    public TableTextStripper(int labId) {
+        this.labId = labId;
+        this.template = ColumnTemplate.forLab(labId);
+        setSortByPosition(true);
+    }
+
+    public List<TableRow> getRows() {
+        return rows;
+    }
+
+    // Lines that are not rows, one per line
+    public String getOtherText() {
+        return otherText.toString();
+    }
+
+    // null when no header row was found and none was cached
+    public ColumnTemplate getTemplate() {
+        return template;
+    }
+
+    // =========================================================
+    // PDFTextStripper HOOKS
+    // =========================================================
+    @Override
+    protected void startPage(PDPage page) throws IOException {
+
+        super.startPage(page);
+
+        pageRowsFrom = rows.size();
+        lastRow = null;
+        lastLineWasRow = false;
+        heading = null;
+    }
+
+    @Override
+    protected void writeString(String text, List<TextPosition> positions) throws IOException {
+
+        super.writeString(text, positions);
+
+        if (positions.isEmpty() || text.isBlank()) {
+            return;
+        }
+
+        TextPosition first = positions.get(0);
+        TextPosition last = positions.get(positions.size() - 1);
+
+        line.add(new Word(text.strip(),
+                first.getXDirAdj(),
+                last.getXDirAdj() + last.getWidthDirAdj(),
+                first.getHeightDir()));
+    }
+
+    @Override
+    protected void writeLineSeparator() throws IOException {
+        endLine();
+        super.writeLineSeparator();
+    }
+
+    @Override
+    protected void endPage(PDPage page) throws IOException {
+        endLine();
+        super.endPage(page);
+    }
+
+    @Override
+    protected void endDocument(PDDocument document) throws IOException {
+
+        super.endDocument(document);
+
+        if (templateChanged) {
+            ColumnTemplate.remember(labId, template);
+        }
+    }
+
+    // =========================================================
+    // ONE LINE
+    // =========================================================
+    private void endLine() {
+
+        if (line.isEmpty()) {
+            return;
+        }
+
+        try {
+            ColumnTemplate header = ColumnTemplate.fromHeader(line);
+
+            if (header != null) {
+                onHeader(header);
+                return;
+            }
+
+            String text = lineText();
+
+            if (template == null || !onTableLine(text)) {
+                addOther(text);
+            }
+        } finally {
+            line.clear();
+        }
+    }
+
+    private String lineText() {
+
+        StringBuilder text = new StringBuilder();
+
+        for (Word word : line) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(word.text);
+        }
+
+        return text.toString();
+    }
+
+    private void addOther(String text) {
+        otherText.append(text).append('\n');
+    }
+
+    private void onHeader(ColumnTemplate header) {
+
+        if (template == null || !template.sameLayout(header)) {
+            template = header;
+            templateChanged = true;
+        }
+
+        // what came before the header on this page was not table
+        List<TableRow> before = rows.subList(pageRowsFrom, rows.size());
+        for (TableRow row : before) {
+            addOther(row.line);
+        }
+        before.clear();
+        lastRow = null;
+        lastLineWasRow = false;
+        heading = null;
+    }
+
+    // True when the line became a row
+    private boolean onTableLine(String text) {
+
+        String[] cells = new String[ColumnTemplate.COLUMNS];
+
+        for (Word word : line) {
+            int c = template.columnOf(word.x);
+            cells[c] = cells[c] == null ? word.text : cells[c] + " " + word.text;
+        }
+
+        String name = cells[ColumnTemplate.NAME];
+        boolean continuesRow = lastLineWasRow;
+
+        lastLineWasRow = false;
+
+        if (cells[ColumnTemplate.RESULT] != null) {
+
+            TableRow row = new TableRow(getCurrentPageNo());
+            row.name = name;
+            row.value = cells[ColumnTemplate.RESULT];
+            row.unit = cells[ColumnTemplate.UNIT];
+            row.range = cells[ColumnTemplate.RANGE];
+            row.method = cells[ColumnTemplate.METHOD];
+            row.heading = heading;
+            row.line = text;
+
+            rows.add(row);
+
+            lastRow = row;
+            lastLineWasRow = true;
+            heading = null;
+            return true;
+        }
+
+        // No value: a wrapped name and / or method, or a title
+        if (continuesRow) {
+
+            lastRow.nameContinuation = name;
+
+            String method = cells[ColumnTemplate.METHOD];
+            if (method != null) {
+                lastRow.method = lastRow.method == null ? method : lastRow.method + " " + method;
+            }
+        }
+
+        if (name != null) {
+            heading = name;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,192 @@
+package engine;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// =========================================================
+// WARM-UP
+// Runs a sample report through extraction and validation a few
+// times before the first real report, so class loading, PDFBox
+// font / CMap setup and JIT compilation happen at start-up
+// instead of on the first report. Also opens the connection
+// pool.
+//
+// The sample is the PDF given (e.g. an anonymised report of the
+// main lab) or, without one, a small report rendered in memory.
+// Nothing is written anywhere: the extraction cache is off, the
+// catalogue is a built-in one under lab id WARMUP_LAB, and its
+// column template is dropped afterwards.
+// =========================================================
+public final class WarmUp {
+
+    public static final int DEFAULT_ITERATIONS = 20;
+
+    // Not a real lab; keeps warm-up out of the per-lab caches
+    private static final int WARMUP_LAB = -1;
+
+    private static final float FONT_SIZE = 9f;
+    private static final float LINE_HEIGHT = 12f;
+    private static final float[] COLUMN_X = { 40, 230, 290, 360, 450 };
+
+    private static final String[] HEADER = {
+            "MR Number : 000000000",
+            "Patient Name : Warm Up",
+            "Age : 40 Yrs",
+            "Gender : Female",
+            "HAEMATOLOGY",
+    };
+
+    // Test Name, Result, Unit, Bio.Ref.Range, Method
+    private static final String[][] ROWS = {
+            { "Test Name", "Result", "Unit", "Bio.Ref.Range", "Method" },
+            { "COMPLETE BLOOD COUNT ( CBC )" },
+            { "Hemoglobin", "15.6", "gm/dl", "12-16", "Photometric" },
+            { "Packed Cell Volume (HCT)", "47.1", "%", "36-46", "Calculated" },
+            { "R.B.C.Count", "4.99", "mill/cmm", "3.8 - 4.8", "Electrical Impedance" },
+            { "Total WBC Count", "8300", "cells/cumm", "4000-11000", "Electrical Impedance" },
+            { "Polymorphs", "45", "%", "50-70", "Coulter VCSn Tech" },
+            { "Lymphocytes", "46", "%", "20 -40", "Coulter VCSn Tech" },
+            { "Platelet Count", "2.51", "Lakh/cumm", "1.5-4.5", "Electrical Impedance" },
+            { "Blood Sugar Fasting", "119", "mg/dL", "70 - 110", "GOD-POD" },
+            { "Total Cholesterol", "174.0", "mg/dL", "Desirable : < 200,", "CHOD/POD" },
+            { "Serum Creatinine", "1.19", "mg/dL", "0.5 - 1.1", "Jaffes" },
+    };
+
+    private static final int PAGES = 3;
+
+    private WarmUp() {
+    }
+
+    // samplePdf may be null. Returns the time taken in ms.
+    public static long run(String samplePdf, int iterations) {
+
+        long start = System.nanoTime();
+
+        warmPool();
+
+        try {
+            byte[] pdf = samplePdf != null && Files.exists(Paths.get(samplePdf))
+                    ? Files.readAllBytes(Paths.get(samplePdf))
+                    : renderSample();
+
+            LabValidator lab = LabValidator.compile(WARMUP_LAB, sampleCatalogue());
+            MethodValidationEngine engine = new MethodValidationEngine();
+
+            PDFExtractorEngine extractor = new PDFExtractorEngine();
+            extractor.setCache(null);
+
+            int results = 0;
+
+            for (int i = 0; i < iterations; i++) {
+
+                String text = extractor.extractAndSave(pdf);
+                if (text != null) {
+                    results += engine.validateBatch(text, lab).size();
+                }
+
+                PDFExtractorEngine.TableExtraction table = extractor.extractTable(pdf, WARMUP_LAB);
+                if (table != null) {
+                    results += engine.validateTable(table, lab).size();
+                }
+            }
+
+            System.out.println("Warm-up: " + iterations + " iterations, "
+                    + results + " results");
+
+        } catch (Exception e) {
+            System.out.println("Warm-up error: " + e.getMessage());
+        } finally {
+            ColumnTemplate.forget(WARMUP_LAB);
+        }
+
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    // Opens the pool's connections now rather than on the first
+    // claim; a database that is down only means a slower start
+    private static void warmPool() {
+        try (Connection conn = DataSourceProvider.get().getConnection()) {
+            conn.isValid(1);
+        } catch (Exception e) {
+            System.out.println("Warm-up: database not reachable (" + e.getMessage() + ")");
+        }
+    }
+
+    private static Map<String, String> sampleCatalogue() {
+
+        Map<String, String> catalogue = new LinkedHashMap<>();
+
+        for (int r = 2; r < ROWS.length; r++) {
+            if (ROWS[r].length == COLUMN_X.length) {
+                catalogue.put(ROWS[r][0], ROWS[r][4]);
+            }
+        }
+
+        return catalogue;
+    }
+
+    // =========================================================
+    // IN-MEMORY SAMPLE
+    // A few pages in the usual layout: patient block, header row,
+    // result rows and footer, in a standard 14 font (no font
+    // files needed).
+    // =========================================================
+    static byte[] renderSample() throws IOException {
+
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+
+        try (PDDocument document = new PDDocument();
+                ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+
+            for (int p = 1; p <= PAGES; p++) {
+
+                PDPage page = new PDPage();
+                document.addPage(page);
+
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+
+                    content.setFont(font, FONT_SIZE);
+
+                    float y = page.getMediaBox().getHeight() - 40;
+
+                    for (String line : HEADER) {
+                        show(content, COLUMN_X[0], y, line);
+                        y -= LINE_HEIGHT;
+                    }
+
+                    for (String[] row : ROWS) {
+                        for (int c = 0; c < row.length; c++) {
+                            show(content, COLUMN_X[c], y, row[c]);
+                        }
+                        y -= LINE_HEIGHT;
+                    }
+
+                    show(content, COLUMN_X[0], 40, "Page " + p + " of " + PAGES);
+                }
+            }
+
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    private static void show(PDPageContentStream content, float x, float y, String text)
+            throws IOException {
+
+        content.beginText();
+        content.newLineAtOffset(x, y);
+        content.showText(text);
+        content.endText();
+    }
+}
@@ -0,0 +1,153 @@
+package queueengine_v1;
+
+import engine.EngineMetrics;
+import engine.ExtractionBudget;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// =========================================
+// PDF PREFETCHER
+// Reads the PDFs of claimed reports into memory on a couple of
+// background I/O threads, so file reads overlap with extraction
+// of the report before. The extract step uses the bytes if they
+// are ready (or waits for them); a failed read just falls back
+// to reading the file there. Large documents (see
+// ExtractionBudget) are not prefetched: they are parsed from the
+// file, so holding their bytes would only cost heap.
+//
+// Prefetched bytes are reserved in the ExtractionBudget until
+// they are taken (extraction then admits the document itself)
+// or released. A PDF that does not fit in the budget right now
+// is left for the extract step to read, so a large claimed batch
+// cannot pile up more bytes than the budget allows.
+//
+// Every prefetched report must end in take() or release();
+// shutdown() reports any that did not.
+// =========================================
+public class PdfPrefetcher {
+
+    private final ExecutorService io;
+
+    // prefetched, neither taken nor released yet
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    public PdfPrefetcher(int threads) {
+
+        AtomicInteger n = new AtomicInteger();
+
+        this.io = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "pdf-prefetch-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void prefetch(QueueReport report) {
+
+        outstanding.incrementAndGet();
+
+        report.prefetched = CompletableFuture.supplyAsync(() -> {
+            long t = System.nanoTime();
+            long reserved = 0;
+            try {
+                ExtractionBudget budget = ExtractionBudget.getDefault();
+                long size = Files.size(Paths.get(report.filepath));
+
+                if (budget.isLarge(size)) {
+                    return null;
+                }
+                if (!budget.tryReserve(size)) {
+                    EngineMetrics.count("prefetch_skipped_total");
+                    return null;
+                }
+                reserved = size;
+
+                byte[] bytes = Files.readAllBytes(Paths.get(report.filepath));
+
+                // file changed since it was sized: let extraction read it
+                if (bytes.length != size) {
+                    return null;
+                }
+                reserved = 0;
+                return bytes;
+
+            } catch (Exception e) {
+                System.out.println("Prefetch failed for " + report.filename
+                        + ": " + e.getMessage());
+                return null;
+            } finally {
+                if (reserved > 0) {
+                    ExtractionBudget.getDefault().unreserve(reserved);
+                }
+                EngineMetrics.record("prefetch", t);
+            }
+        }, io);
+    }
+
+    // Prefetched bytes, or null if the report was not prefetched,
+    // is large or the read failed
+    public byte[] take(QueueReport report) {
+
+        CompletableFuture<byte[]> f = report.prefetched;
+
+        if (f == null) {
+            return null;
+        }
+
+        report.prefetched = null;
+        outstanding.decrementAndGet();
+
+        long t = System.nanoTime();
+        byte[] bytes = f.join();
+        EngineMetrics.record("prefetch_wait", t);
+
+        unreserve(bytes);
+        return bytes;
+    }
+
+    // Drops the bytes of a report that will not be extracted from
+    // them (released back to PENDING, failed early, streaming)
+    public void release(QueueReport report) {
+
+        CompletableFuture<byte[]> f = report.prefetched;
+
+        if (f == null) {
+            return;
+        }
+
+        report.prefetched = null;
+        outstanding.decrementAndGet();
+
+        // not cancelled: a read already running would keep its
+        // reservation, so give it back whenever the read ends
+        f.thenAccept(PdfPrefetcher::unreserve);
+
+        EngineMetrics.count("prefetch_unused_total");
+    }
+
+    private static void unreserve(byte[] bytes) {
+        if (bytes != null) {
+            ExtractionBudget.getDefault().unreserve(bytes.length);
+        }
+    }
+
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    public void shutdown() {
+
+        io.shutdownNow();
+
+        int leaked = outstanding.get();
+        if (leaked > 0) {
+            System.out.println("Prefetcher: " + leaked
+                    + " prefetched PDFs were neither taken nor released");
+        }
+    }
+}
@@ -1,22 +1,143 @@
 package queueengine_v1;
 
 import engine.DatabaseManager;
+import engine.DbMetrics;
 
 import java.sql.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 
 public class QueueDatabaseManager extends DatabaseManager {
 
+    // poc.reportqueue.patientid (sql/patient_identity.sql);
+    // null = not checked yet
+    private volatile Boolean hasPatientId;
+
+    // =========================================
+    // SCHEMA CHECK (sql/patient_identity.sql)
+    // Without poc.reportqueue.patientid the claim queries leave it
+    // out and every patient is identified by the MR Number in the
+    // report header. poc.patient.mrnumber is required, see
+    // DatabaseManager.checkPatientSchema.
+    // =========================================
+    @Override
+    public boolean checkPatientSchema() {
+
+        if (hasPatientId == null) {
+
+            Boolean patientId = columnExists("reportqueue", "patientid");
+
+            if (patientId == Boolean.FALSE) {
+                System.out.println("poc.reportqueue.patientid is missing (run sql/patient_identity.sql);"
+                        + " identifying patients by the MR Number in the report header only.");
+            }
+
+            hasPatientId = patientId;
+        }
+
+        return super.checkPatientSchema();
+    }
+
+    private String claimColumns() {
+        checkPatientSchema();
+        return hasPatientId == Boolean.FALSE
+                ? "reportid, labid, filename"
+                : "reportid, labid, filename, patientid";
+    }
+
+    // 0 = identify by MR Number
+    private int patientIdOf(ResultSet rs) throws SQLException {
+        return hasPatientId == Boolean.FALSE ? 0 : rs.getInt("patientid");
+    }
+
+    // poc.reportqueue.claimedat (sql/reportqueue_lease.sql); null =
+    // not checked yet. Without it claims are not timestamped and
+    // expired claims cannot be found.
+    private volatile Boolean hasClaimedAt;
+
+    private boolean hasClaimedAtColumn() {
+
+        Boolean has = hasClaimedAt;
+        if (has != null) {
+            return has;
+        }
+
+        has = columnExists("reportqueue", "claimedat");
+        if (has == null) {
+            return false;
+        }
+
+        if (!has) {
+            System.out.println("poc.reportqueue.claimedat is missing (run sql/reportqueue_lease.sql);"
+                    + " reports left PROCESSING by a killed engine are not re-queued.");
+        }
+
+        hasClaimedAt = has;
+        return has;
+    }
+
+    private String claimSet() {
+        return hasClaimedAtColumn()
+                ? "SET status = 'PROCESSING', claimedat = CURRENT_TIMESTAMP "
+                : "SET status = 'PROCESSING' ";
+    }
+
+    // =========================================
+    // RE-QUEUE EXPIRED CLAIMS
+    // Reports PROCESSING for longer than the lease go back to
+    // PENDING: their engine was killed before finishing or
+    // releasing them. Returns the number of reports re-queued.
+    // =========================================
+    public int requeueExpired(long leaseSeconds) {
+
+        if (!hasClaimedAtColumn()) {
+            return 0;
+        }
+
+        String query = "UPDATE poc.reportqueue SET status = 'PENDING', claimedat = NULL " +
+                "WHERE status = 'PROCESSING' " +
+                "AND claimedat < CURRENT_TIMESTAMP - make_interval(secs => ?)";
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("requeueExpired");
+
+        try (Connection conn = getConnection();
+                PreparedStatement ps = conn.prepareStatement(query)) {
+
+            ps.setLong(1, leaseSeconds);
+
+            int requeued = ps.executeUpdate();
+            timer.rows(requeued);
+            return requeued;
+
+        } catch (Exception e) {
+            System.out.println("Queue lease sweep error: " + e.getMessage());
+            return 0;
+        } finally {
+            timer.stop();
+        }
+    }
+
     // =========================================
-    // FETCH NEXT PENDING REPORT
+    // CLAIM NEXT PENDING REPORT
+    // Marks the oldest PENDING row as PROCESSING in one statement
+    // and stamps claimedat (see requeueExpired).
+    // SKIP LOCKED lets concurrent workers claim different rows
+    // instead of blocking on (or double-processing) the same one.
     // =========================================
     public QueueReport fetchNextPendingReport() {
 
-        String query = "SELECT reportid, labid, filename " +
-                "FROM poc.reportqueue " +
-                "WHERE status = 'PENDING' " +
-                "ORDER BY uploadtime ASC LIMIT 1";
+        String query = "UPDATE poc.reportqueue " + claimSet() +
+                "WHERE reportid = (" +
+                "   SELECT reportid FROM poc.reportqueue " +
+                "   WHERE status = 'PENDING' " +
+                "   ORDER BY uploadtime ASC LIMIT 1 " +
+                "   FOR UPDATE SKIP LOCKED" +
+                ") " +
+                "RETURNING " + claimColumns();
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("fetchNextPendingReport");
 
         try (Connection conn = getConnection();
                 PreparedStatement ps = conn.prepareStatement(query);
@@ -30,99 +151,139 @@ public class QueueDatabaseManager extends DatabaseManager {
 
                 String filepath = "pdf/" + filename;
 
-                return new QueueReport(id, labId, filename, filepath);
+                QueueReport report = new QueueReport(id, labId, filename, filepath);
+                report.patientId = patientIdOf(rs);
+
+                return report;
             }
 
         } catch (Exception e) {
             System.out.println("Queue fetch error: " + e.getMessage());
+        } finally {
+            timer.stop();
         }
 
         return null;
     }
 
     // =========================================
-    // UPDATE STATUS
+    // CLAIM A BATCH OF PENDING REPORTS
+    // Same as above for up to `limit` rows in one round trip.
+    // Returned oldest first.
     // =========================================
-    public void updateStatus(int reportId, String status) {
+    public List<QueueReport> fetchPendingReports(int limit) {
 
-        String query = "UPDATE poc.reportqueue SET status = ?, " +
-                "processedtime = CURRENT_TIMESTAMP " +
-                "WHERE reportid = ?";
+        String query = "UPDATE poc.reportqueue " + claimSet() +
+                "WHERE reportid IN (" +
+                "   SELECT reportid FROM poc.reportqueue " +
+                "   WHERE status = 'PENDING' " +
+                "   ORDER BY uploadtime ASC LIMIT ? " +
+                "   FOR UPDATE SKIP LOCKED" +
+                ") " +
+                "RETURNING " + claimColumns() + ", uploadtime";
+
+        List<QueueReport> reports = new ArrayList<>();
+        List<Timestamp> uploaded = new ArrayList<>();
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("fetchPendingReports");
 
         try (Connection conn = getConnection();
                 PreparedStatement ps = conn.prepareStatement(query)) {
 
-            ps.setString(1, status);
-            ps.setInt(2, reportId);
-            ps.executeUpdate();
+            ps.setInt(1, limit);
+
+            try (ResultSet rs = ps.executeQuery()) {
+
+                while (rs.next()) {
+
+                    int id = rs.getInt("reportid");
+                    int labId = rs.getInt("labid");
+                    String filename = rs.getString("filename");
+
+                    QueueReport report = new QueueReport(id, labId, filename, "pdf/" + filename);
+                    report.patientId = patientIdOf(rs);
+
+                    reports.add(report);
+                    uploaded.add(rs.getTimestamp("uploadtime"));
+                }
+            }
+
+            timer.rows(reports.size());
 
         } catch (Exception e) {
-            System.out.println("Status update error: " + e.getMessage());
+            System.out.println("Queue batch fetch error: " + e.getMessage());
+        } finally {
+            timer.stop();
+        }
+
+        // RETURNING has no guaranteed order
+        Integer[] order = new Integer[reports.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(uploaded::get,
+                Comparator.nullsLast(Comparator.naturalOrder())));
+
+        List<QueueReport> sorted = new ArrayList<>(reports.size());
+        for (int i : order) {
+            sorted.add(reports.get(i));
         }
+
+        return sorted;
     }
 
     // =========================================
-    // FIND PATIENT NAME
+    // UPDATE STATUS
     // =========================================
-    public String findPatientNameById(int patientId) {
+    public void updateStatus(int reportId, String status) {
 
-        String query = "SELECT name FROM poc.patient WHERE patientid = ?";
+        String query = "UPDATE poc.reportqueue SET status = ?, " +
+                "processedtime = CURRENT_TIMESTAMP " +
+                "WHERE reportid = ?";
+
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("updateStatus");
 
         try (Connection conn = getConnection();
                 PreparedStatement ps = conn.prepareStatement(query)) {
 
-            ps.setInt(1, patientId);
-            ResultSet rs = ps.executeQuery();
-
-            if (rs.next()) {
-                return rs.getString("name");
-            }
+            ps.setString(1, status);
+            ps.setInt(2, reportId);
+            ps.executeUpdate();
 
         } catch (Exception e) {
-            System.out.println("Patient fetch error: " + e.getMessage());
+            System.out.println("Status update error: " + e.getMessage());
+        } finally {
+            timer.stop();
         }
-
-        return null;
     }
 
     // =========================================
-    // LOAD PARAMETERS WITH METHOD
+    // PENDING QUEUE STATS
+    // Returns { pending count, age of oldest PENDING row in seconds }
     // =========================================
-    public Map<String, String> loadParametersWithMethod(int labId) {
+    public long[] fetchPendingStats() {
 
-        Map<String, String> paramMap = new HashMap<>();
+        String query = "SELECT COUNT(*) AS pending, " +
+                "COALESCE(EXTRACT(EPOCH FROM (CURRENT_TIMESTAMP - MIN(uploadtime))), 0) AS oldest " +
+                "FROM poc.reportqueue " +
+                "WHERE status = 'PENDING'";
 
-        String query = "SELECT tp.parametername, tp.method " +
-                "FROM poc.testparameter tp " +
-                "JOIN poc.testgroup tg ON tp.testgroupid = tg.testgroupid " +
-                "WHERE tg.labid = ?";
+        DbMetrics.QueryTimer timer = DbMetrics.startQuery("fetchPendingStats");
 
         try (Connection conn = getConnection();
-                PreparedStatement ps = conn.prepareStatement(query)) {
-
-            ps.setInt(1, labId);
-            ResultSet rs = ps.executeQuery();
+                PreparedStatement ps = conn.prepareStatement(query);
+                ResultSet rs = ps.executeQuery()) {
 
-            while (rs.next()) {
-                paramMap.put(
-                        rs.getString("parametername"),
-                        rs.getString("method"));
+            if (rs.next()) {
+                return new long[] { rs.getLong("pending"), rs.getLong("oldest") };
             }
 
         } catch (Exception e) {
-            System.out.println("Parameter load error: " + e.getMessage());
+            System.out.println("Queue stats error: " + e.getMessage());
+        } finally {
+            timer.stop();
         }
 
-        return paramMap;
-    }
-
-    // =========================================
-    // DATABASE CONNECTION
-    // =========================================
-    public Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(
-                "jdbc:postgresql://localhost:5432/patient_data",
-                "postgres",
-                "ajw12345");
+        return new long[] { 0, 0 };
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,100 @@
+package queueengine_v1;
+
+import engine.DbConfig;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+// =========================================
+// LISTEN / NOTIFY LISTENER
+// Holds one dedicated connection (outside the pool, since a
+// LISTEN session must stay open) on channel reportqueue_pending.
+// The insert trigger in sql/reportqueue_notify.sql sends a NOTIFY
+// for every new PENDING row, and this wakes idle workers at once.
+// Reconnects with back-off if the connection drops.
+// =========================================
+public class QueueNotificationListener implements Runnable {
+
+    public static final String CHANNEL = "reportqueue_pending";
+
+    private static final int WAIT_MS = 10_000;
+    private static final long MAX_BACKOFF_MS = 30_000;
+
+    private final DbConfig config;
+    private final WorkSignal signal;
+
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public QueueNotificationListener(DbConfig config, WorkSignal signal) {
+        this.config = config;
+        this.signal = signal;
+    }
+
+    public void start() {
+        thread = new Thread(this, "queue-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+
+        long backoffMs = 1_000;
+
+        while (running) {
+
+            try (Connection conn = DriverManager.getConnection(
+                    config.url, config.user, config.password)) {
+
+                try (Statement st = conn.createStatement()) {
+                    st.execute("LISTEN " + CHANNEL);
+                }
+
+                System.out.println("Listening for new reports on: " + CHANNEL);
+                backoffMs = 1_000;
+
+                // Something may have been queued while we were not listening
+                signal.signalAll();
+
+                PGConnection pg = conn.unwrap(PGConnection.class);
+
+                while (running) {
+
+                    PGNotification[] notifications = pg.getNotifications(WAIT_MS);
+
+                    if (notifications != null && notifications.length > 0) {
+                        signal.signalAll();
+                    }
+                }
+
+            } catch (Exception e) {
+
+                if (!running) {
+                    return;
+                }
+
+                System.out.println("Queue listener error: " + e.getMessage()
+                        + " (retrying in " + backoffMs + " ms)");
+
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException ie) {
+                    return;
+                }
+
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            }
+        }
+    }
+}
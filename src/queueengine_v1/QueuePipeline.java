@@ -0,0 +1,298 @@
+package queueengine_v1;
+
+import engine.EngineMetrics;
+import engine.ReportContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// =========================================
+// STAGED PIPELINE
+// claim -> extract -> validate -> persist, each stage on its own
+// threads, connected by bounded queues:
+//
+//   claim     1 thread      claims PENDING reports
+//   extract   CPU threads   PDF text extraction
+//   validate  N threads     patient / parameter lookups + method check
+//   persist   N threads     problem report + status update
+//
+// When a downstream stage falls behind its input queue fills and
+// the stage before it blocks on put(), down to the claim thread,
+// which then stops claiming. Reports are therefore only marked
+// PROCESSING when there is room to work on them, CPU threads keep
+// extracting while other reports wait on the database, and
+// throughput is bounded by the slowest stage instead of the sum.
+// =========================================
+public class QueuePipeline {
+
+    // Marks the end of input for one worker of a stage
+    private static final ReportJob END = new ReportJob(null);
+
+    private final QueueProcessor processor;
+    private final WorkSignal signal;
+    private final long idleSleepMs;
+    private final int queueCapacity;
+
+    private final BlockingQueue<ReportJob> extractQueue;
+    private final BlockingQueue<ReportJob> validateQueue;
+    private final BlockingQueue<ReportJob> persistQueue;
+
+    private final Stage extractStage;
+    private final Stage validateStage;
+    private final Stage persistStage;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final CountDownLatch claimFinished = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    public QueuePipeline(QueueProcessor processor,
+                         int extractThreads,
+                         int validateThreads,
+                         int persistThreads,
+                         int queueCapacity,
+                         long idleSleepMs,
+                         WorkSignal signal) {
+
+        this.processor = processor;
+        this.signal = signal;
+        this.idleSleepMs = idleSleepMs;
+        this.queueCapacity = queueCapacity;
+
+        this.extractQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.validateQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.persistQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        this.persistStage = new Stage("persist", persistThreads,
+                persistQueue, null, this::persist);
+        this.validateStage = new Stage("validate", validateThreads,
+                validateQueue, persistStage, this::validate);
+        this.extractStage = new Stage("extract", extractThreads,
+                extractQueue, validateStage, processor::extract);
+    }
+
+    // =========================================
+    // START
+    // =========================================
+    public void start() {
+
+        persistStage.start();
+        validateStage.start();
+        extractStage.start();
+
+        Thread claim = new Thread(this::claimLoop, "pipeline-claim");
+        claim.start();
+
+        System.out.println("Pipeline started: extract=" + extractStage.threads
+                + " validate=" + validateStage.threads
+                + " persist=" + persistStage.threads
+                + " queue capacity=" + queueCapacity);
+    }
+
+    public WorkSignal signal() {
+        return signal;
+    }
+
+    // Queue depths, refreshed whenever the metrics endpoint is scraped
+    public void registerGauges() {
+        EngineMetrics.addCollector(() -> {
+            EngineMetrics.setGauge("pipeline_extract_queue", extractQueue.size());
+            EngineMetrics.setGauge("pipeline_validate_queue", validateQueue.size());
+            EngineMetrics.setGauge("pipeline_persist_queue", persistQueue.size());
+        });
+    }
+
+    // =========================================
+    // CLAIM STAGE
+    // =========================================
+    private void claimLoop() {
+
+        try {
+            while (running) {
+
+                long seen = signal.generation();
+
+                QueueReport report = processor.claimNextReport();
+
+                if (report == null) {
+                    signal.await(seen, idleSleepMs);
+                    continue;
+                }
+
+                System.out.println("Claimed: " + report.filename
+                        + " (lab " + report.labId + ")");
+
+                // Blocks while the extract stage is full (backpressure)
+                long t = System.nanoTime();
+                extractQueue.put(new ReportJob(report));
+                EngineMetrics.record("pipeline_claim_blocked", t);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            extractStage.endInput();
+            claimFinished.countDown();
+        }
+    }
+
+    private void validate(ReportJob job) {
+
+        // patients of the reports queued behind this one, one query
+        processor.prefetchPatients(job, validateQueue);
+
+        processor.validate(job);
+    }
+
+    private void persist(ReportJob job) {
+
+        processor.persist(job);
+
+        EngineMetrics.record("report_total", job.claimedAt);
+        processed.incrementAndGet();
+    }
+
+    // =========================================
+    // STOP
+    // Claiming stops; reports already claimed run through every
+    // stage, then the stage threads exit.
+    // =========================================
+    public void stop() {
+        running = false;
+        signal.signalAll();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        claimFinished.await();
+        extractStage.awaitTermination();
+        validateStage.awaitTermination();
+        persistStage.awaitTermination();
+    }
+
+    public int getProcessedCount() {
+        return processed.get();
+    }
+
+    // =========================================
+    // STAGE
+    // Fixed threads taking jobs from a bounded input queue and
+    // handing them to the next stage. An unexpected error fails
+    // the job, which still goes on to persist so the report is
+    // marked FAILED and never stays PROCESSING.
+    // =========================================
+    private static class Stage {
+
+        private final String name;
+        private final int threads;
+        private final BlockingQueue<ReportJob> input;
+        private final Stage next;
+        private final Consumer<ReportJob> work;
+
+        private final List<Thread> workers = new ArrayList<>();
+        private final AtomicInteger running;
+
+        Stage(String name, int threads, BlockingQueue<ReportJob> input,
+              Stage next, Consumer<ReportJob> work) {
+
+            this.name = name;
+            this.threads = threads;
+            this.input = input;
+            this.next = next;
+            this.work = work;
+            this.running = new AtomicInteger(threads);
+        }
+
+        void start() {
+            for (int i = 1; i <= threads; i++) {
+                Thread t = new Thread(this::loop, "pipeline-" + name + "-" + i);
+                workers.add(t);
+                t.start();
+            }
+        }
+
+        // Called once the previous stage will send nothing more
+        void endInput() {
+            for (int i = 0; i < threads; i++) {
+                putUninterruptibly(input, END);
+            }
+        }
+
+        void awaitTermination() throws InterruptedException {
+            for (Thread t : workers) {
+                t.join();
+            }
+        }
+
+        private void loop() {
+
+            try {
+                while (true) {
+
+                    ReportJob job = input.take();
+
+                    if (job == END) {
+                        return;
+                    }
+
+                    handle(job);
+
+                    if (next != null) {
+                        // Blocks while the next stage is full (backpressure)
+                        long t = System.nanoTime();
+                        putUninterruptibly(next.input, job);
+                        EngineMetrics.record("pipeline_" + name + "_blocked", t);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // last worker out closes the next stage
+                if (running.decrementAndGet() == 0 && next != null) {
+                    next.endInput();
+                }
+            }
+        }
+
+        private void handle(ReportJob job) {
+
+            long t = System.nanoTime();
+            ReportContext.set(job.report.reportId, job.report.labId);
+
+            try {
+                work.accept(job);
+            } catch (RuntimeException e) {
+                if (next == null) {
+                    System.out.println("Report " + job.report.reportId
+                            + " could not be saved: " + e.getMessage());
+                } else {
+                    job.fail("Report " + job.report.reportId
+                            + " failed in " + name + ": " + e.getMessage());
+                }
+            } finally {
+                EngineMetrics.record("pipeline_" + name, t);
+                ReportContext.clear();
+            }
+        }
+
+        // A claimed job must never be dropped, or its report
+        // would stay PROCESSING
+        private static void putUninterruptibly(BlockingQueue<ReportJob> queue,
+                                               ReportJob job) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(job);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
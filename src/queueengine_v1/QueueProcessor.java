@@ -1,110 +1,610 @@
 package queueengine_v1;
 
+import engine.EngineMetrics;
+import engine.ExtractedRowStore;
+import engine.LabValidator;
+import engine.LabValidatorCache;
+import engine.Patient;
+import engine.PatientCache;
 import engine.PDFExtractorEngine;
+import engine.ReportContext;
+import engine.ReportHeader;
 import engine.MethodValidationEngine;
+import engine.ResultBatch;
+import engine.ResultStatus;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class QueueProcessor {
 
+    private static final int PREFETCH_THREADS = 2;
+
+    public static final long DEFAULT_LEASE_SECONDS = 900;
+
+    // How often claiming also looks for expired claims
+    private static final long SWEEP_INTERVAL_MS = 60_000;
+
     private QueueDatabaseManager db = new QueueDatabaseManager();
 
+    // Shared by all workers using this processor
+    private final LabValidatorCache labCache = new LabValidatorCache(db);
+
+    // Patients by id / MR number, prefetched per claimed batch
+    private final PatientCache patients = new PatientCache(db);
+
+    // Parsed rows kept for re-validation (see RevalidationRunner)
+    private final ExtractedRowStore rowStore = new ExtractedRowStore();
+
+    // Page-by-page extraction fed straight into validation
+    private boolean streaming = false;
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    // Split large PDFs across cores (non-streaming mode only)
+    private boolean parallelExtraction = false;
+
+    public void setParallelExtraction(boolean parallelExtraction) {
+        this.parallelExtraction = parallelExtraction;
+    }
+
+    // Read the result table by column position (TableTextStripper);
+    // non-streaming mode only
+    private boolean layoutAware = false;
+
+    public void setLayoutAware(boolean layoutAware) {
+        this.layoutAware = layoutAware;
+    }
+
+    // Claim up to this many reports per round trip and prefetch
+    // their PDFs; the rest wait in `claimed` for the next call
+    private int claimBatch = 1;
+    private PdfPrefetcher prefetcher;
+
+    private final ConcurrentLinkedQueue<QueueReport> claimed = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock claimLock = new ReentrantLock();
+
+    // Reports PROCESSING longer than this are put back to PENDING
+    // (their engine died); 0 turns the sweep off
+    private long leaseSeconds = DEFAULT_LEASE_SECONDS;
+    private final AtomicLong nextSweepAt = new AtomicLong();
+
+    public void setLeaseSeconds(long leaseSeconds) {
+        this.leaseSeconds = leaseSeconds;
+    }
+
+    public void setPatientTtlSeconds(long seconds) {
+        patients.setTtlSeconds(seconds);
+    }
+
+    public void setClaimBatch(int claimBatch) {
+        this.claimBatch = claimBatch;
+        if (claimBatch > 1 && prefetcher == null) {
+            prefetcher = new PdfPrefetcher(PREFETCH_THREADS);
+        }
+    }
+
     public void processNextReport() {
 
-        QueueReport report = db.fetchNextPendingReport();
+        QueueReport report = claimNextReport();
 
         if (report == null) {
             System.out.println("No pending reports found.");
             return;
         }
 
+        processReport(report);
+    }
+
+    // Atomically claims the next PENDING report (marks it PROCESSING).
+    // Safe to call from several threads / processes at once.
+    public QueueReport claimNextReport() {
+
+        requeueExpiredClaims();
+
+        if (claimBatch > 1) {
+            return claimFromBatch();
+        }
+
+        long t = System.nanoTime();
+        QueueReport report = db.fetchNextPendingReport();
+        EngineMetrics.record(report == null ? "claim_empty" : "claim", t);
+
+        return report;
+    }
+
+    // At most once per SWEEP_INTERVAL_MS across all workers: claims
+    // of engines that were killed (no releaseClaimed) expire after
+    // the lease and become claimable again
+    private void requeueExpiredClaims() {
+
+        long now = System.currentTimeMillis();
+        long due = nextSweepAt.get();
+
+        if (leaseSeconds <= 0 || now < due
+                || !nextSweepAt.compareAndSet(due, now + SWEEP_INTERVAL_MS)) {
+            return;
+        }
+
+        int requeued = db.requeueExpired(leaseSeconds);
+
+        if (requeued > 0) {
+            EngineMetrics.count("claims_expired_total", null, null, requeued);
+            System.out.println("Re-queued " + requeued + " reports left PROCESSING for over "
+                    + leaseSeconds + " s.");
+        }
+    }
+
+    // Hands out already claimed reports first; when none are left,
+    // one thread claims the next batch while the others wait on
+    // the lock (and then find the batch in the buffer).
+    private QueueReport claimFromBatch() {
+
+        QueueReport report = claimed.poll();
+        if (report != null) {
+            return report;
+        }
+
+        claimLock.lock();
+        try {
+
+            report = claimed.poll();
+            if (report != null) {
+                return report;
+            }
+
+            long t = System.nanoTime();
+            List<QueueReport> batch = db.fetchPendingReports(claimBatch);
+            EngineMetrics.record(batch.isEmpty() ? "claim_empty" : "claim_batch", t);
+
+            if (batch.isEmpty()) {
+                return null;
+            }
+
+            List<Integer> patientIds = new ArrayList<>(batch.size());
+
+            for (QueueReport r : batch) {
+                // streaming reads the file page by page itself
+                if (!streaming) {
+                    prefetcher.prefetch(r);
+                }
+                patientIds.add(r.patientId);
+            }
+
+            // one round trip for the whole batch's patients
+            t = System.nanoTime();
+            patients.prefetch(patientIds);
+            EngineMetrics.record("patient_prefetch", t);
+
+            claimed.addAll(batch.subList(1, batch.size()));
+
+            return batch.get(0);
+
+        } finally {
+            claimLock.unlock();
+        }
+    }
+
+    // On shutdown: reports claimed in a batch but never started go
+    // back to PENDING so another engine can pick them up.
+    public void releaseClaimed() {
+
+        int released = 0;
+        QueueReport report;
+
+        while ((report = claimed.poll()) != null) {
+            if (prefetcher != null) {
+                prefetcher.release(report);
+            }
+            db.updateStatus(report.reportId, "PENDING");
+            released++;
+        }
+
+        if (released > 0) {
+            System.out.println("Released " + released + " unstarted reports back to PENDING.");
+        }
+
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+        }
+    }
+
+    // Queue depth and age of the oldest PENDING row, refreshed
+    // whenever the metrics endpoint is scraped
+    public void registerQueueGauges() {
+        EngineMetrics.addCollector(() -> {
+            long[] stats = db.fetchPendingStats();
+            EngineMetrics.setGauge("queue_pending", stats[0]);
+            EngineMetrics.setGauge("queue_oldest_pending_seconds", stats[1]);
+            if (prefetcher != null) {
+                EngineMetrics.setGauge("prefetch_outstanding", prefetcher.outstanding());
+            }
+        });
+    }
+
+    // False when the database lacks the patient identity columns
+    // this engine cannot work without (see QueueDatabaseManager)
+    public boolean checkSchema() {
+        return db.checkPatientSchema();
+    }
+
+    // Drops the cached parameters of a lab, e.g. after its
+    // testparameter methods were edited.
+    public void invalidateLab(int labId) {
+        labCache.invalidate(labId);
+    }
+
+    // Processes an already claimed report. Any unexpected error marks
+    // the report FAILED so it never stays stuck in PROCESSING.
+    public void processReport(QueueReport report) {
+
+        long t = System.nanoTime();
+        ReportContext.set(report.reportId, report.labId);
+
+        try {
+            runReport(report);
+        } catch (RuntimeException e) {
+            finish(report, "FAILED");
+            System.out.println("Report " + report.reportId
+                    + " failed: " + e.getMessage());
+        } finally {
+            EngineMetrics.record("report_total", t);
+            ReportContext.clear();
+        }
+    }
+
+    // Final status update (timed) + DONE/FAILED counter. Every
+    // claimed report ends here, so prefetched bytes still unused
+    // (e.g. failed before extraction) are dropped too.
+    private void finish(QueueReport report, String status) {
+
+        if (prefetcher != null) {
+            prefetcher.release(report);
+        }
+
+        long t = System.nanoTime();
+        db.updateStatus(report.reportId, status);
+        EngineMetrics.record("status_update", t);
+
+        EngineMetrics.count("reports_total", "status", status);
+    }
+
+    private void runReport(QueueReport report) {
+
         System.out.println("=================================");
         System.out.println("Processing: " + report.filename);
         System.out.println("Lab ID    : " + report.labId);
         System.out.println("=================================");
 
-        // STEP 1 - Extract PDF
+        if (streaming) {
+            runReportStreaming(report);
+            return;
+        }
+
+        ReportJob job = new ReportJob(report);
+
+        extract(job);
+        validate(job);
+        persist(job);
+    }
+
+    // =========================================
+    // PROCESSING STEPS
+    // Non-streaming processing split into extract (CPU), validate
+    // (patient + parameter lookups, method check) and persist
+    // (status update). runReport calls them in order on one
+    // thread; QueuePipeline runs each on its own pool.
+    // =========================================
+
+    // STEP 1 - Extract PDF
+    public void extract(ReportJob job) {
+
         PDFExtractorEngine extractor = new PDFExtractorEngine();
-        String text = extractor.extractAndSave(report.filepath);
+        extractor.setParallel(parallelExtraction);
 
-        if (text == null) {
-            db.updateStatus(report.reportId, "FAILED");
-            System.out.println("PDF extraction failed.");
-            return;
+        byte[] pdfBytes = prefetcher != null ? prefetcher.take(job.report) : null;
+
+        long t = System.nanoTime();
+
+        if (layoutAware) {
+
+            int labId = job.report.labId;
+
+            job.table = pdfBytes != null
+                    ? extractor.extractTable(pdfBytes, labId)
+                    : extractor.extractTable(job.report.filepath, labId);
+
+            job.text = job.table == null ? null : job.table.text;
+
+        } else {
+            job.text = pdfBytes != null
+                    ? extractor.extractAndSave(pdfBytes)
+                    : extractor.extractAndSave(job.report.filepath);
+        }
+
+        EngineMetrics.record("extract", t);
+
+        if (job.text == null) {
+            job.fail("PDF extraction failed.");
         }
+    }
 
-        // STEP 2 - Validate Patient Name
-        int patientId = 6; // change as needed
+    // Pipeline, before validate: a report identified by its MR
+    // number whose patient is not cached loads the patients of
+    // every extracted report waiting behind it in one query. The
+    // MR number is only known once the PDF is read, so claimed
+    // batches can prefetch by patientid only.
+    public void prefetchPatients(ReportJob job, Collection<ReportJob> waiting) {
 
-        String dbPatientName = db.findPatientNameById(patientId);
+        String mrNumber = mrNumberToResolve(job);
 
-        if (dbPatientName == null) {
-            db.updateStatus(report.reportId, "FAILED");
-            System.out.println("Patient not found in DB.");
+        if (mrNumber == null || patients.containsMrNumber(mrNumber)) {
             return;
         }
 
-        if (!normalize(text).contains(normalize(dbPatientName))) {
+        List<String> mrNumbers = new ArrayList<>(waiting.size() + 1);
+        mrNumbers.add(mrNumber);
+
+        for (ReportJob w : waiting) {
+            String m = mrNumberToResolve(w);
+            if (m != null) {
+                mrNumbers.add(m);
+            }
+        }
+
+        long t = System.nanoTime();
+        patients.prefetchMrNumbers(mrNumbers);
+        EngineMetrics.record("patient_prefetch", t);
+    }
+
+    // MR number of an extracted report without a queue patientid
+    private static String mrNumberToResolve(ReportJob job) {
 
-            db.updateStatus(report.reportId, "FAILED");
+        if (job.report == null || job.report.patientId > 0
+                || job.text == null || job.isFailed()) {
+            return null;
+        }
+
+        return ReportHeader.parse(job.text).mrNumber;
+    }
 
-            System.out.println("\nERROR: Patient name mismatch!");
-            System.out.println("Expected: " + dbPatientName);
+    // STEP 2 + 3 + 4 - Patient name, parameters, methods
+    public void validate(ReportJob job) {
+
+        if (job.isFailed()) {
+            return;
+        }
+
+        // STEP 2 - Validate Patient (header MR number / name)
+        String error = checkPatient(job.report, job.text);
+
+        if (error != null) {
+            job.fail(error);
             return;
         }
 
         System.out.println("Patient name verified.");
 
-        // STEP 3 - Load Parameters
-        Map<String, String> paramMap =
-                db.loadParametersWithMethod(report.labId);
+        // STEP 3 - Load Parameters (cached per lab)
+        long t = System.nanoTime();
+        LabValidator lab = labCache.get(job.report.labId);
+        EngineMetrics.record("load_parameters", t);
 
         // STEP 4 - Validate Methods
         MethodValidationEngine engine =
                 new MethodValidationEngine();
 
-        List<MethodValidationEngine.ValidationResult> results =
-                engine.validate(text, paramMap);
+        t = System.nanoTime();
+        job.results = job.table != null
+                ? engine.validateTable(job.table, lab)
+                : engine.validateBatch(job.text, lab);
+        EngineMetrics.record("validate", t);
+
+        // text is no longer needed; let it go before the job
+        // waits in the persist queue
+        job.text = null;
+        job.table = null;
+        job.status = "DONE";
+    }
+
+    // STEP 5 - Report problems and update status
+    public void persist(ReportJob job) {
+
+        if (job.isFailed()) {
+            finish(job.report, "FAILED");
+            System.out.println(job.message);
+            return;
+        }
+
+        countStatuses(job.results);
+
+        printProblems(job.results);
+
+        saveRows(job.report, job.results);
+
+        finish(job.report, "DONE");
+
+        System.out.println("\nValidation Completed.");
+    }
+
+    // =========================================
+    // STREAMING MODE
+    // Parameters are loaded first, then each PDF page is validated
+    // as soon as it is extracted. Only one page of text is in
+    // memory at a time; the patient is checked on the first page
+    // (the header repeats on every page).
+    // =========================================
+    private void runReportStreaming(QueueReport report) {
+
+        long t = System.nanoTime();
+        LabValidator lab = labCache.get(report.labId);
+        EngineMetrics.record("load_parameters", t);
+
+        MethodValidationEngine engine =
+                new MethodValidationEngine();
+
+        MethodValidationEngine.Session session =
+                engine.newSession(lab);
 
-        printProblems(results);
+        String[] patientError = { null };
 
-        db.updateStatus(report.reportId, "DONE");
+        PDFExtractorEngine extractor = new PDFExtractorEngine();
+
+        // extraction and validation are interleaved in this mode
+        t = System.nanoTime();
+
+        int pages = extractor.extractPages(report.filepath,
+                (page, pageCount, pageText) -> {
+
+                    if (page == 1) {
+                        patientError[0] = checkPatient(report, pageText);
+                        if (patientError[0] != null) {
+                            return false;
+                        }
+                    }
+
+                    session.setPage(page);
+                    int found = session.scan(pageText);
+
+                    System.out.println("Page " + page + "/" + pageCount
+                            + " validated, parameters found: " + found);
+
+                    return true;
+                });
+
+        EngineMetrics.record("extract_validate", t);
+
+        if (pages < 0) {
+            finish(report, "FAILED");
+            System.out.println("PDF extraction failed.");
+            return;
+        }
+
+        if (patientError[0] != null) {
+            finish(report, "FAILED");
+            System.out.println(patientError[0]);
+            return;
+        }
+
+        System.out.println("Patient name verified.");
+
+        EngineMetrics.count("repeated_chars_skipped_total", null, null,
+                session.getCharsSkipped());
+
+        countStatuses(session.getBatch());
+        printProblems(session.getBatch());
+
+        saveRows(report, session.getBatch());
+
+        finish(report, "DONE");
 
         System.out.println("\nValidation Completed.");
     }
 
-    private void printProblems(
-            List<MethodValidationEngine.ValidationResult> results) {
+    private void saveRows(QueueReport report, ResultBatch results) {
+
+        long t = System.nanoTime();
+        rowStore.saveRows(report.reportId, report.labId, results);
+        EngineMetrics.record("save_rows", t);
+    }
+
+    private void countStatuses(ResultBatch results) {
+
+        int[] counts = results.countByStatus();
+
+        for (ResultStatus status : ResultStatus.values()) {
+            if (counts[status.ordinal()] > 0) {
+                EngineMetrics.count("validation_results_total", "status",
+                        status.label(), counts[status.ordinal()]);
+            }
+        }
+    }
+
+    private void printProblems(ResultBatch results) {
 
         System.out.println("\n===== PROBLEM REPORT =====");
 
         boolean foundIssue = false;
 
-        for (var r : results) {
+        for (int i = 0; i < results.size(); i++) {
 
-            if (!r.status.equals("MATCH") &&
-                !r.status.equals("MATCH (NO METHOD)")) {
+            if (!results.status(i).isMatch()) {
 
                 foundIssue = true;
 
                 System.out.println("--------------------------------");
-                System.out.println("Parameter : " + r.parameter);
-                System.out.println("Value     : " + r.value);
-                System.out.println("PDF Method: " + r.pdfMethod);
-                System.out.println("DB Method : " + r.dbMethod);
-                System.out.println("STATUS    : " + r.status);
+                System.out.println("Parameter : " + results.parameter(i));
+                System.out.println("Value     : " + results.valueText(i));
+                System.out.println("PDF Method: " + results.pdfMethod(i));
+                System.out.println("DB Method : " + results.dbMethod(i));
+                System.out.println("STATUS    : " + results.status(i));
             }
         }
 
         if (!foundIssue) {
             System.out.println("No method issues found.");
         }
+
+        // Flags computed from the cached reference ranges,
+        // no DB read needed
+        for (int i = 0; i < results.size(); i++) {
+
+            if (results.isAbnormal(i)) {
+                System.out.println("ABNORMAL  : " + results.parameter(i)
+                        + " = " + results.valueText(i)
+                        + " (" + results.abnormalityText(i) + ")");
+                EngineMetrics.count("abnormal_results_total", "flag", results.abnormalityText(i));
+            }
+
+            if (results.rangeMismatch(i)) {
+                System.out.println("RANGE     : " + results.parameter(i)
+                        + " printed as " + results.referenceRange(i)
+                        + ", differs from DB reference range");
+                EngineMetrics.count("range_mismatch_total");
+            }
+        }
     }
 
-    private String normalize(String s) {
-        if (s == null) return "";
-        return s.replaceAll("[^a-zA-Z]", "")
-                .toLowerCase();
+    // =========================================
+    // PATIENT CHECK
+    // Only the report header is read: the patient comes from the
+    // queue's patientid or, failing that, the printed MR number,
+    // and the printed name must match it. Returns null when the
+    // report belongs to the patient, otherwise the reason.
+    // =========================================
+    private String checkPatient(QueueReport report, String text) {
+
+        ReportHeader header = ReportHeader.parse(text);
+
+        long t = System.nanoTime();
+        Patient patient = patients.resolve(report.patientId, header);
+        EngineMetrics.record("patient_lookup", t);
+
+        if (patient == null) {
+            if (report.patientId > 0) {
+                return "Patient " + report.patientId + " not found in DB.";
+            }
+            if (header.mrNumber != null) {
+                return "No patient with MR Number " + header.mrNumber + " in DB.";
+            }
+            return "Patient not identified: no queue patientid and no MR Number in the header.";
+        }
+
+        if (patient.mrNumberDiffers(header.mrNumber)) {
+            return "\nERROR: MR Number mismatch!\nExpected: " + patient.mrNumber
+                    + ", report has: " + header.mrNumber;
+        }
+
+        if (!patient.isNamedIn(header.patientNameOr(text))) {
+            return "\nERROR: Patient name mismatch!\nExpected: " + patient.name;
+        }
+
+        return null;
     }
 }
\ No newline at end of file
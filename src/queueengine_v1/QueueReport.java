@@ -1,5 +1,7 @@
 package queueengine_v1;
 
+import java.util.concurrent.CompletableFuture;
+
 public class QueueReport {
 
     public int reportId;
@@ -7,6 +9,13 @@ public class QueueReport {
     public String filename;
     public String filepath;
 
+    // poc.reportqueue.patientid; 0 when the upload did not set it
+    // and the patient is found by the header's MR number instead
+    public int patientId;
+
+    // PDF bytes being read ahead by PdfPrefetcher (null if not prefetched)
+    public volatile CompletableFuture<byte[]> prefetched;
+
     public QueueReport(int reportId, int labId,
                        String filename, String filepath) {
 
@@ -1,8 +1,60 @@
 package queueengine_v1;
 
+import engine.DataSourceProvider;
+import engine.DbMetrics;
+import engine.EngineMetrics;
+import engine.ExtractionBudget;
+import engine.MetricsHttpServer;
+import engine.PatientCache;
+import engine.WarmUp;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+
 public class QueueRunner {
 
-    public static void main(String[] args) {
+    // Usage:
+    //   QueueRunner                 -> process one report and exit
+    //   QueueRunner --workers N     -> keep draining the queue on N threads
+    //   (optional) --idle-ms M      -> sleep between polls when queue is empty
+    //   (optional) --streaming      -> extract and validate page by page
+    //   (optional) --parallel-extract -> strip large PDFs on all cores
+    //   (optional) --layout         -> read the result table by column
+    //                                  position (not with --streaming)
+    //   (optional) --metrics-port P -> serve http://localhost:P/metrics
+    //   (optional) --listen         -> wake workers via LISTEN/NOTIFY
+    //                                  (poll every --idle-ms as safety net,
+    //                                   default 30000 in this mode)
+    //   QueueRunner --pipeline      -> staged claim/extract/validate/persist
+    //   (optional) --extract-threads N  (default: CPU cores)
+    //   (optional) --validate-threads N (default: 2)
+    //   (optional) --persist-threads N  (default: 2)
+    //   (optional) --queue-capacity N   (default: 4, per stage)
+    //   QueueRunner --virtual-threads -> one virtual thread per report (Java 21+;
+    //                                  Java 17: --workers N platform threads)
+    //   (optional) --extract-threads N  (default: CPU cores)
+    //   (optional) --max-in-flight N    (default: 1000 claimed reports)
+    //   (optional, any long-running mode) --claim-batch K
+    //                               -> claim K reports per round trip and
+    //                                  prefetch their PDFs
+    //   QueueRunner --daemon        -> resident service: warm up, then run
+    //                                  the chosen long-running mode
+    //                                  (default --workers <CPU cores>)
+    //   (optional, any long-running mode) --warmup N
+    //                               -> N warm-up iterations before the
+    //                                  first claim (default 20 with --daemon)
+    //   (optional) --warmup-pdf F   -> sample report to warm up with
+    //                                  (default: one rendered in memory)
+    //   QueueRunner --warmup-only   -> warm up and exit (AppCDS training run)
+    //   (optional) --extract-budget-mb N -> heap PDF extractions in flight
+    //                                  may use (default: half of -Xmx)
+    //   (optional) --lease-seconds N -> claims older than N s (engine killed)
+    //                                  go back to PENDING (default 900, 0 = off)
+    //   (optional) --large-pdf-mb N -> PDFs from this size are parsed from
+    //                                  disk with temp-file buffers (default 16)
+    //   (optional) --patient-ttl-seconds N -> re-read cached patients after
+    //                                  N s (default 300)
+    public static void main(String[] args) throws InterruptedException, IOException {
 
         long startTime = System.nanoTime();
 
@@ -10,9 +62,321 @@ public class QueueRunner {
         System.out.println(" DIAGNOIQ - QUEUE ENGINE V1 ");
         System.out.println("=================================");
 
+        int workers = 0;
+        long idleMs = -1;
+        int metricsPort = 0;
+        boolean streaming = false;
+        boolean parallelExtract = false;
+        boolean layout = false;
+        boolean listen = false;
+        boolean pipeline = false;
+        boolean virtualThreads = false;
+        boolean daemon = false;
+        boolean warmupOnly = false;
+        int warmupIterations = -1;
+        String warmupPdf = null;
+        int maxInFlight = 1000;
+        int claimBatch = 1;
+        long leaseSeconds = QueueProcessor.DEFAULT_LEASE_SECONDS;
+        long patientTtlSeconds = PatientCache.DEFAULT_TTL_SECONDS;
+        int extractThreads = Runtime.getRuntime().availableProcessors();
+        int validateThreads = 2;
+        int persistThreads = 2;
+        int queueCapacity = 4;
+
+        for (String arg : args) {
+            if (arg.equals("--streaming")) {
+                streaming = true;
+            } else if (arg.equals("--parallel-extract")) {
+                parallelExtract = true;
+            } else if (arg.equals("--layout")) {
+                layout = true;
+            } else if (arg.equals("--listen")) {
+                listen = true;
+            } else if (arg.equals("--pipeline")) {
+                pipeline = true;
+            } else if (arg.equals("--virtual-threads")) {
+                virtualThreads = true;
+            } else if (arg.equals("--daemon")) {
+                daemon = true;
+            } else if (arg.equals("--warmup-only")) {
+                warmupOnly = true;
+            }
+        }
+
+        for (int i = 0; i < args.length - 1; i++) {
+            if (args[i].equals("--workers")) {
+                workers = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--idle-ms")) {
+                idleMs = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--metrics-port")) {
+                metricsPort = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--extract-threads")) {
+                extractThreads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--validate-threads")) {
+                validateThreads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--persist-threads")) {
+                persistThreads = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--queue-capacity")) {
+                queueCapacity = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--max-in-flight")) {
+                maxInFlight = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--claim-batch")) {
+                claimBatch = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--warmup")) {
+                warmupIterations = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("--warmup-pdf")) {
+                warmupPdf = args[i + 1];
+            } else if (args[i].equals("--extract-budget-mb")) {
+                ExtractionBudget.getDefault()
+                        .setCapacityBytes(Long.parseLong(args[i + 1]) * 1024 * 1024);
+            } else if (args[i].equals("--lease-seconds")) {
+                leaseSeconds = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--patient-ttl-seconds")) {
+                patientTtlSeconds = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--large-pdf-mb")) {
+                ExtractionBudget.getDefault()
+                        .setLargeDocumentBytes(Long.parseLong(args[i + 1]) * 1024 * 1024);
+            }
+        }
+
+        // The pipeline stages and the virtual-thread dispatcher
+        // extract the whole PDF before validating; layout mode
+        // needs the whole document's table rows
+        if (streaming && (pipeline || virtualThreads || layout)) {
+            System.out.println("--streaming does not combine with "
+                    + (pipeline ? "--pipeline" : virtualThreads ? "--virtual-threads" : "--layout"));
+            return;
+        }
+
+        if (daemon && workers <= 0 && !pipeline && !virtualThreads) {
+            workers = Runtime.getRuntime().availableProcessors();
+        }
+
+        if (warmupIterations < 0) {
+            warmupIterations = daemon || warmupOnly ? WarmUp.DEFAULT_ITERATIONS : 0;
+        }
+
+        // Before anything else is started, so a single-shot run or an
+        // AppCDS training run does not touch the queue
+        if (warmupIterations > 0) {
+
+            long warmupMs = WarmUp.run(warmupPdf, warmupIterations);
+
+            System.out.println("Warm-up took " + warmupMs + " ms, ready "
+                    + ManagementFactory.getRuntimeMXBean().getUptime()
+                    + " ms after JVM start");
+
+            // time spent on warm-up is not processing time
+            startTime = System.nanoTime();
+        }
+
+        if (warmupOnly) {
+            DataSourceProvider.close();
+            return;
+        }
+
+        if (idleMs < 0) {
+            idleMs = listen ? 30_000 : 2_000;
+        }
+
         QueueProcessor processor = new QueueProcessor();
+        processor.setStreaming(streaming);
+        processor.setParallelExtraction(parallelExtract);
+        processor.setLayoutAware(layout);
+        processor.setLeaseSeconds(leaseSeconds);
+        processor.setPatientTtlSeconds(patientTtlSeconds);
+
+        // Fail now rather than have every claimed report fail
+        if (!processor.checkSchema()) {
+            DataSourceProvider.close();
+            return;
+        }
+
+        // A single-shot run processes one report, so it never batches
+        if (workers > 0 || pipeline || virtualThreads) {
+            processor.setClaimBatch(claimBatch);
+        }
+
+        MetricsHttpServer metrics = null;
+
+        if (metricsPort > 0) {
+            processor.registerQueueGauges();
+            ExtractionBudget.getDefault().registerGauges();
+            metrics = new MetricsHttpServer(metricsPort);
+            metrics.start();
+        }
+
+        if (virtualThreads) {
+            // platform threads on Java 17: as many as --workers
+            int fallbackThreads = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+            VirtualThreadDispatcher dispatcher = new VirtualThreadDispatcher(
+                    processor, extractThreads, maxInFlight, fallbackThreads, idleMs, new WorkSignal());
+            if (metricsPort > 0) {
+                dispatcher.registerGauges();
+            }
+            runVirtualThreads(processor, dispatcher, listen, startTime);
+            return;
+        }
+
+        if (pipeline) {
+            QueuePipeline stages = new QueuePipeline(processor,
+                    extractThreads, validateThreads, persistThreads,
+                    queueCapacity, idleMs, new WorkSignal());
+            if (metricsPort > 0) {
+                stages.registerGauges();
+            }
+            runPipeline(processor, stages, listen, startTime);
+            return;
+        }
+
+        if (workers > 0) {
+            runWorkerPool(processor, workers, idleMs, listen, startTime);
+            return;
+        }
+
         processor.processNextReport();
 
+        printElapsed(startTime);
+
+        if (metrics != null) {
+            metrics.stop();
+        }
+    }
+
+    // =========================================
+    // WORKER POOL MODE
+    // Runs until the JVM is stopped (Ctrl+C / SIGTERM).
+    // =========================================
+    private static void runWorkerPool(QueueProcessor processor,
+                                      int workers,
+                                      long idleMs,
+                                      boolean listen,
+                                      long startTime) throws InterruptedException {
+
+        WorkSignal signal = new WorkSignal();
+
+        QueueWorkerPool pool =
+                new QueueWorkerPool(processor, workers, idleMs, signal);
+
+        QueueNotificationListener listener = null;
+
+        if (listen) {
+            listener = new QueueNotificationListener(
+                    DataSourceProvider.config(), signal);
+            listener.start();
+        }
+
+        QueueNotificationListener activeListener = listener;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\nShutting down, finishing in-flight reports...");
+            if (activeListener != null) {
+                activeListener.stop();
+            }
+            pool.stop();
+            try {
+                pool.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processor.releaseClaimed();
+            System.out.println("Reports processed: " + pool.getProcessedCount());
+            printElapsed(startTime);
+            // after the drain: in-flight reports still needed it
+            DataSourceProvider.close();
+        }));
+
+        pool.start();
+        pool.awaitTermination();
+    }
+
+    // =========================================
+    // PIPELINE MODE
+    // Runs until the JVM is stopped (Ctrl+C / SIGTERM); claimed
+    // reports are drained through every stage first.
+    // =========================================
+    private static void runPipeline(QueueProcessor processor,
+                                    QueuePipeline stages,
+                                    boolean listen,
+                                    long startTime) throws InterruptedException {
+
+        QueueNotificationListener listener = null;
+
+        if (listen) {
+            listener = new QueueNotificationListener(
+                    DataSourceProvider.config(), stages.signal());
+            listener.start();
+        }
+
+        QueueNotificationListener activeListener = listener;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\nShutting down, draining the pipeline...");
+            if (activeListener != null) {
+                activeListener.stop();
+            }
+            stages.stop();
+            try {
+                stages.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processor.releaseClaimed();
+            System.out.println("Reports processed: " + stages.getProcessedCount());
+            printElapsed(startTime);
+            // after the drain: in-flight reports still needed it
+            DataSourceProvider.close();
+        }));
+
+        stages.start();
+        stages.awaitTermination();
+    }
+
+    // =========================================
+    // VIRTUAL THREAD MODE
+    // Runs until the JVM is stopped (Ctrl+C / SIGTERM); claimed
+    // reports are finished first.
+    // =========================================
+    private static void runVirtualThreads(QueueProcessor processor,
+                                          VirtualThreadDispatcher dispatcher,
+                                          boolean listen,
+                                          long startTime) throws InterruptedException {
+
+        QueueNotificationListener listener = null;
+
+        if (listen) {
+            listener = new QueueNotificationListener(
+                    DataSourceProvider.config(), dispatcher.signal());
+            listener.start();
+        }
+
+        QueueNotificationListener activeListener = listener;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            System.out.println("\nShutting down, finishing in-flight reports...");
+            if (activeListener != null) {
+                activeListener.stop();
+            }
+            dispatcher.stop();
+            try {
+                dispatcher.awaitTermination();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            processor.releaseClaimed();
+            System.out.println("Reports processed: " + dispatcher.getProcessedCount());
+            printElapsed(startTime);
+            // after the drain: in-flight reports still needed it
+            DataSourceProvider.close();
+        }));
+
+        dispatcher.start();
+        dispatcher.awaitTermination();
+    }
+
+    private static void printElapsed(long startTime) {
+
         long endTime = System.nanoTime();
 
         long durationNano = endTime - startTime;
@@ -24,5 +388,17 @@ public class QueueRunner {
         System.out.println("Time in ms  : " + durationMs);
         System.out.println("Time in sec : " + (durationMs / 1000));
         System.out.println("=================================");
+
+        System.out.println("\n=================================");
+        System.out.println(" STAGE METRICS ");
+        System.out.println("=================================");
+        System.out.print(EngineMetrics.summary());
+        System.out.println("=================================");
+
+        System.out.println("\n=================================");
+        System.out.println(" DATABASE METRICS ");
+        System.out.println("=================================");
+        System.out.print(DbMetrics.report());
+        System.out.println("=================================");
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package queueengine_v1;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueueWorkerPool {
+
+    private final QueueProcessor processor;
+    private final int workers;
+    private final long idleSleepMs;
+    private final WorkSignal signal;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private final CountDownLatch finished;
+    private volatile boolean running = true;
+
+    public QueueWorkerPool(QueueProcessor processor,
+                           int workers,
+                           long idleSleepMs) {
+
+        this(processor, workers, idleSleepMs, new WorkSignal());
+    }
+
+    // With a signal driven by QueueNotificationListener, idle workers
+    // wake as soon as a report is queued; idleSleepMs is then only
+    // the safety-net poll interval.
+    public QueueWorkerPool(QueueProcessor processor,
+                           int workers,
+                           long idleSleepMs,
+                           WorkSignal signal) {
+
+        this.processor = processor;
+        this.workers = workers;
+        this.idleSleepMs = idleSleepMs;
+        this.signal = signal;
+        this.finished = new CountDownLatch(workers);
+    }
+
+    // =========================================
+    // START WORKERS
+    // Each worker claims one report at a time with
+    // SKIP LOCKED, so no two workers get the same row.
+    // Idle workers wait on the WorkSignal (notify or timeout).
+    // =========================================
+    public void start() {
+
+        for (int i = 1; i <= workers; i++) {
+            Thread t = new Thread(this::workLoop, "queue-worker-" + i);
+            t.start();
+        }
+
+        System.out.println("Started " + workers + " queue workers.");
+    }
+
+    private void workLoop() {
+
+        try {
+            while (running) {
+
+                long seen = signal.generation();
+
+                QueueReport report = processor.claimNextReport();
+
+                if (report == null) {
+                    awaitWork(seen);
+                    continue;
+                }
+
+                processor.processReport(report);
+                processed.incrementAndGet();
+            }
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void awaitWork(long seenGeneration) {
+        try {
+            signal.await(seenGeneration, idleSleepMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    // =========================================
+    // STOP
+    // Workers finish the report they are on, then exit.
+    // =========================================
+    public void stop() {
+        running = false;
+        signal.signalAll();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        finished.await();
+    }
+
+    public int getProcessedCount() {
+        return processed.get();
+    }
+}
@@ -0,0 +1,41 @@
+package queueengine_v1;
+
+import engine.PDFExtractorEngine;
+import engine.ResultBatch;
+
+// =========================================
+// REPORT JOB
+// A claimed report as it moves through the processing steps:
+// extracted text after extract, results after validate, and the
+// final status written by persist. A step that fails sets
+// status FAILED with a message; later steps then skip their work.
+// =========================================
+public class ReportJob {
+
+    public final QueueReport report;
+
+    public String text;
+    // Result table by column (layout-aware extraction only)
+    public PDFExtractorEngine.TableExtraction table;
+    public ResultBatch results;
+
+    public String status;
+    public String message;
+
+    // System.nanoTime() when the report was claimed
+    public final long claimedAt;
+
+    public ReportJob(QueueReport report) {
+        this.report = report;
+        this.claimedAt = System.nanoTime();
+    }
+
+    public void fail(String message) {
+        this.status = "FAILED";
+        this.message = message;
+    }
+
+    public boolean isFailed() {
+        return "FAILED".equals(status);
+    }
+}
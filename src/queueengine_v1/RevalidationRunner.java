@@ -0,0 +1,84 @@
+package queueengine_v1;
+
+import engine.DataSourceProvider;
+import engine.DbMetrics;
+import engine.ExtractedRowStore;
+import engine.LabValidator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class RevalidationRunner {
+
+    // =========================================
+    // RE-VALIDATE A LAB AFTER A METHOD CHANGE
+    // Usage: RevalidationRunner <labId>
+    //
+    // Compares the method snapshot stored with each extracted row
+    // (poc.extractedrow) against the current poc.testparameter
+    // methods, looks for the PDF method again in the stored method
+    // text, and re-runs the method decision only for the
+    // parameters that changed. Rows of parameters removed from the
+    // catalogue are listed and left as they are. No PDF is opened.
+    // =========================================
+    public static void main(String[] args) {
+
+        long startTime = System.nanoTime();
+
+        System.out.println("=================================");
+        System.out.println(" DIAGNOIQ - RE-VALIDATION ");
+        System.out.println("=================================");
+
+        if (args.length == 0) {
+            System.out.println("Usage: RevalidationRunner <labId>");
+            return;
+        }
+
+        int labId = Integer.parseInt(args[0]);
+
+        ExtractedRowStore store = new ExtractedRowStore();
+
+        Map<String, String> methods = store.loadParametersWithMethod(labId);
+        LabValidator lab = LabValidator.compile(labId, methods);
+
+        List<String> removed = new ArrayList<>();
+        List<String> changed = store.findChangedParameters(lab, removed);
+
+        System.out.println("Lab ID             : " + labId);
+        System.out.println("Changed parameters : " + changed.size());
+
+        for (String parameter : changed) {
+            System.out.println("  " + parameter + " -> " + methods.get(parameter));
+        }
+
+        if (!removed.isEmpty()) {
+            System.out.println("Not in catalogue   : " + removed.size() + " (rows left unchanged)");
+            for (String parameter : removed) {
+                System.out.println("  " + parameter);
+            }
+        }
+
+        Map<String, Integer> transitions = store.revalidate(lab, changed);
+
+        System.out.println("\n===== STATUS CHANGES =====");
+
+        int rows = 0;
+
+        for (Map.Entry<String, Integer> e : transitions.entrySet()) {
+            System.out.println(e.getKey() + " : " + e.getValue());
+            rows += e.getValue();
+        }
+
+        double durationMs = (System.nanoTime() - startTime) / 1_000_000.0;
+
+        System.out.println("\n=================================");
+        System.out.println("Rows re-validated : " + rows);
+        System.out.println("Time in ms        : " + durationMs);
+        System.out.println("=================================");
+
+        System.out.print(DbMetrics.report());
+
+        DataSourceProvider.close();
+    }
+}
@@ -0,0 +1,230 @@
+package queueengine_v1;
+
+import engine.EngineMetrics;
+import engine.ReportContext;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// =========================================
+// VIRTUAL THREAD MODE
+// Every claimed report gets its own virtual thread (Java 21+)
+// that does the blocking work: patient and parameter lookups,
+// result updates and the status update. PDF extraction is
+// CPU-bound and is handed to a fixed pool of platform threads;
+// the report's virtual thread just waits for it.
+//
+// No thread pool needs sizing for the DB side: the HikariCP
+// pool is the limiter, and virtual threads park cheaply while
+// they wait for a connection. maxInFlight only caps how many
+// reports are claimed (marked PROCESSING) at once.
+//
+// On Java 17 the virtual thread executor does not exist; the
+// mode then falls back to a fixed pool of fallbackThreads
+// platform threads (as many as --workers would use), and no
+// more reports than that are claimed at once.
+// =========================================
+public class VirtualThreadDispatcher {
+
+    private static final long SLOT_WAIT_MS = 1_000;
+
+    private final QueueProcessor processor;
+    private final WorkSignal signal;
+    private final long idleSleepMs;
+
+    private final ExecutorService reportExecutor;
+    private final ExecutorService extractPool;
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile boolean running = true;
+    private Thread claimThread;
+
+    public VirtualThreadDispatcher(QueueProcessor processor,
+                                   int extractThreads,
+                                   int maxInFlight,
+                                   int fallbackThreads,
+                                   long idleSleepMs,
+                                   WorkSignal signal) {
+
+        this.processor = processor;
+        this.signal = signal;
+        this.idleSleepMs = idleSleepMs;
+
+        ExecutorService virtualThreads = newVirtualThreadExecutor();
+
+        if (virtualThreads == null) {
+            // one platform thread per in-flight report
+            maxInFlight = Math.min(maxInFlight, fallbackThreads);
+            virtualThreads = Executors.newFixedThreadPool(maxInFlight);
+            System.out.println("Virtual threads need Java 21+, running "
+                    + Runtime.version() + ": using " + maxInFlight
+                    + " platform threads instead.");
+        }
+
+        this.maxInFlight = maxInFlight;
+        this.reportExecutor = virtualThreads;
+        this.extractPool = Executors.newFixedThreadPool(extractThreads);
+        this.inFlight = new Semaphore(maxInFlight);
+
+        System.out.println("Virtual thread mode: extract threads="
+                + extractThreads + " max in flight=" + maxInFlight);
+    }
+
+    public WorkSignal signal() {
+        return signal;
+    }
+
+    // Reports currently claimed and not yet finished
+    public void registerGauges() {
+        EngineMetrics.addCollector(() ->
+                EngineMetrics.setGauge("reports_in_flight",
+                        maxInFlight - inFlight.availablePermits()));
+    }
+
+    // =========================================
+    // START
+    // =========================================
+    public void start() {
+        claimThread = new Thread(this::claimLoop, "vt-claim");
+        claimThread.start();
+    }
+
+    private void claimLoop() {
+
+        try {
+            while (running) {
+
+                // Wait for a free slot before claiming
+                if (!inFlight.tryAcquire(SLOT_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+
+                if (!running) {
+                    inFlight.release();
+                    break;
+                }
+
+                long seen = signal.generation();
+
+                QueueReport report = processor.claimNextReport();
+
+                if (report == null) {
+                    inFlight.release();
+                    signal.await(seen, idleSleepMs);
+                    continue;
+                }
+
+                reportExecutor.execute(() -> runReport(new ReportJob(report)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Runs on the report's own (virtual) thread. Whatever happens
+    // (an Error from PDFBox included) the report is persisted as
+    // FAILED and its slot freed, or awaitTermination would hang.
+    private void runReport(ReportJob job) {
+
+        ReportContext.set(job.report.reportId, job.report.labId);
+
+        try {
+            try {
+                extract(job);
+                processor.validate(job);
+            } catch (Throwable e) {
+                job.fail("Report " + job.report.reportId
+                        + " failed: " + e);
+            }
+
+            try {
+                processor.persist(job);
+            } catch (Throwable e) {
+                System.out.println("Report " + job.report.reportId
+                        + " could not be saved: " + e);
+            }
+        } finally {
+            EngineMetrics.record("report_total", job.claimedAt);
+            ReportContext.clear();
+            processed.incrementAndGet();
+            inFlight.release();
+        }
+    }
+
+    // Extraction runs on the bounded platform pool
+    private void extract(ReportJob job) {
+
+        long t = System.nanoTime();
+
+        Future<?> done = extractPool.submit(() -> {
+            ReportContext.set(job.report.reportId, job.report.labId);
+            try {
+                processor.extract(job);
+            } finally {
+                ReportContext.clear();
+            }
+        });
+
+        try {
+            done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            job.fail("Report " + job.report.reportId + " interrupted during extraction");
+        } catch (ExecutionException e) {
+            job.fail("Report " + job.report.reportId
+                    + " failed: " + e.getCause());
+        }
+
+        // includes time queued for a free extraction thread
+        EngineMetrics.record("extract_wait", t);
+    }
+
+    // =========================================
+    // STOP
+    // Claiming stops; reports already claimed are finished.
+    // =========================================
+    public void stop() {
+        running = false;
+        signal.signalAll();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+
+        if (claimThread != null) {
+            claimThread.join();
+        }
+
+        // all slots free = every claimed report is finished
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+
+        reportExecutor.shutdown();
+        extractPool.shutdown();
+        reportExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        extractPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    public int getProcessedCount() {
+        return processed.get();
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() via reflection,
+    // so the code still compiles and runs on Java 17; null there
+    private static ExecutorService newVirtualThreadExecutor() {
+
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
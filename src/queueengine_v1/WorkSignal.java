@@ -0,0 +1,55 @@
+package queueengine_v1;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// =========================================
+// WORK SIGNAL
+// Idle workers wait here instead of sleeping; the LISTEN/NOTIFY
+// listener (or shutdown) wakes them all at once. A generation
+// counter prevents lost wake-ups: a worker that saw an empty
+// queue at generation G returns immediately if a signal arrived
+// after G, even if it had not started waiting yet.
+// =========================================
+public class WorkSignal {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    private long generation = 0;
+
+    public long generation() {
+        lock.lock();
+        try {
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void signalAll() {
+        lock.lock();
+        try {
+            generation++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits until a signal newer than seenGeneration or the timeout
+    public void await(long seenGeneration, long timeoutMs) throws InterruptedException {
+
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+
+        lock.lock();
+        try {
+            while (generation == seenGeneration && remaining > 0) {
+                remaining = changed.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}